@@ -1,4 +1,27 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 /**
  * Tests {@link OFile} for bugs.
@@ -97,6 +120,128 @@ public class BugTester extends CodeTester {
 		assertClear(testFile);
 	}
 
+	public void _testWriteFile() {
+		StringBuilder large = new StringBuilder();
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < (int)1e5; i++) {
+			large.append(String.format("Line Num: %d\n", (i + 1)));
+			lines.add(String.format("Line Num: %d", (i + 1)));
+		}
+
+		assertEqual(testFile.writeFile(large) != null, true, true);
+		assertEqual(testFile.readFile(), large.toString(), true);
+
+		testFile.clear();
+		assertEqual(testFile.writeFile(lines, true) != null, true, true);
+		assertEqual(testFile.readFile(), large.toString(), true);
+		assertEqual(testFile.getAbsoluteFile().getParentFile()
+			.list((dir, name) -> name.endsWith(".tmp")).length, 0, true);
+
+		assertEqual(testFile.writeFile("hello world".getBytes()) != null,
+			true, true);
+		assertEqual(testFile.readFile(), "hello world", true);
+		assertEqual(testFile.writeFile("hello world", true).readFile(),
+			"hello world", true);
+
+		assertClear(testFile);
+	}
+
+	public void _testAtomicWritePermissions() {
+		Path path = testFile.toPath();
+		try {
+			Files.setPosixFilePermissions(path,
+				PosixFilePermissions.fromString("rw-r-x---"));
+		} catch (UnsupportedOperationException | IOException e) {
+			return;
+		}
+
+		assertEqual(testFile.writeFile("hello world", true) != null, true,
+			true);
+		try {
+			assertEqual(PosixFilePermissions.toString(
+				Files.getPosixFilePermissions(path)), "rw-r-x---", true);
+		} catch (IOException e) {
+			assertEqual(e, null, true);
+		}
+
+		assertClear(testFile);
+	}
+
+	public void _testAtomicWriteSymlink() {
+		Path link = Paths.get(COPY_FILE_NAME);
+		testFile.write("target").close();
+		try {
+			Files.createSymbolicLink(link, testFile.toPath().getFileName());
+		} catch (UnsupportedOperationException | IOException e) {
+			assertClear(testFile);
+			return;
+		}
+
+		assertEqual(new OFile(COPY_FILE_NAME).writeFile("hello world", true) !=
+			null, true, true);
+		assertEqual(Files.isSymbolicLink(link), true, true);
+		assertEqual(testFile.readFile(), "hello world", true);
+
+		try {
+			Files.delete(link);
+		} catch (IOException e) {
+			assertEqual(e, null, true);
+		}
+		assertClear(testFile);
+	}
+
+	public void _testReadFiles() {
+		assertExists(TEST_DIR_NAME, false);
+
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 100; i++)
+			files.add(new OFile(TEST_DIR_NAME + "/" + i + ".txt")
+				.writeFile("contents " + i));
+		files.add(new File(TEST_DIR_NAME + "/missing.txt"));
+
+		Map<File, OFile.ReadResult> results = OFile.readFiles(files, 8);
+		assertEqual(results.size(), files.size(), true);
+		for (int i = 0; i < 100; i++)
+			assertEqual(results.get(files.get(i)).getContents(),
+				"contents " + i, true);
+		OFile.ReadResult missing = results.get(files.get(100));
+		assertEqual(missing.isSuccess(), false, true);
+		assertNull(missing.getContents(), true);
+		assertExists(TEST_DIR_NAME + "/missing.txt", false);
+
+		assertDelete(TEST_DIR_NAME + "/");
+	}
+
+	public void _testReadLastLines() {
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < (int)1e4; i++)
+			large.append(String.format("Line Num: %d\n", (i + 1)));
+		large.append(String.format("%5000s\n", "long line"));
+		testFile.writeFile(large);
+
+		List<String> lines = testFile.readLastLines(3);
+		assertEqual(lines.size(), 3, true);
+		assertEqual(lines.get(0), "Line Num: 9999", true);
+		assertEqual(lines.get(1), "Line Num: 10000", true);
+		assertEqual(lines.get(2).trim(), "long line", true);
+		assertEqual(testFile.readLastLines((int)1e5).size(), (int)1e4 + 1,
+			true);
+
+		OFile.ReverseLineIterator iterator = testFile.reverseLines();
+		iterator.next();
+		for (int i = (int)1e4; i > 0; i--)
+			assertEqual(iterator.next(), String.format("Line Num: %d", i), true);
+		assertEqual(iterator.hasNext(), false, true);
+
+		testFile.clear().write("first\r\n\nlast").close();
+		assertEqual(testFile.readLastLines(5),
+			Arrays.asList("first", "", "last"), true);
+		testFile.clear();
+		assertEqual(testFile.readLastLines(5).size(), 0, true);
+
+		assertClear(testFile);
+	}
+
 	public void _testFileLength() {
 		int numLines = (int)1e4;
 		for (int i = 0; i < numLines; i++)
@@ -107,6 +252,246 @@ public class BugTester extends CodeTester {
 		assertClear(testFile);
 	}
 
+	public void _testBufferSize() {
+		testFile.write("small file").close();
+		assertEqual(testFile.getBufferSize(), 512, true);
+
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < (int)1e4; i++)
+			large.append(String.format("Line Num: %d\n", (i + 1)));
+		testFile.writeFile(large);
+		int bufferSize = testFile.getBufferSize();
+		assert bufferSize >= testFile.length() && bufferSize <= (1 << 20) :
+			String.format("Bad buffer size %d!", bufferSize);
+		assertEqual(testFile.countLines(), (int)1e4, true);
+
+		assertEqual(testFile.setBufferSize(1024).getBufferSize(), 1024, true);
+		assertEqual(testFile.countLines(), (int)1e4, true);
+		assertEqual(testFile.read(), "Line Num: 1", true);
+		testFile.setBufferSize(0);
+
+		OFile.setDefaultBufferSize(4096);
+		assertEqual(testFile.getBufferSize(), 4096, true);
+		OFile.setDefaultBufferSize(0);
+
+		assertClear(testFile);
+	}
+
+	public void _testBufferPool() {
+		OFile.BufferPool defaultPool = OFile.getBufferPool();
+		OFile.BufferPool pool = new OFile.BufferPool(new int[] {8192}, 8192);
+		OFile.setBufferPool(pool);
+
+		testFile.write("pooled\nbuffers\n").close();
+		for (int i = 0; i < 10; i++) {
+			assertEqual(testFile.countLines(), 2, true);
+			assertEqual(testFile.getChecksum() != null, true, true);
+		}
+		assertEqual(pool.getBorrowed(), 20L, true);
+		assertEqual(pool.getAllocated(), 1L, true);
+		assertEqual(pool.getReturned(), 20L, true);
+		assertEqual(pool.getPooledBytes(), 8192L, true);
+
+		ByteBuffer first = pool.borrowHeap(100);
+		ByteBuffer second = pool.borrowHeap(100);
+		ByteBuffer large = pool.borrowDirect(1 << 20);
+		assertEqual(first.capacity(), 8192, true);
+		assertEqual(large.isDirect(), true, true);
+		pool.release(first);
+		pool.release(second);
+		pool.release(large);
+		assertEqual(pool.getDropped(), 2L, true);
+		assertEqual(pool.getPooledBytes(), 8192L, true);
+
+		OFile.setBufferPool(defaultPool);
+		assertClear(testFile);
+	}
+
+	public void _testSortLines() {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < (int)2e4; i++)
+			lines.add(String.valueOf(i * 7919 % 5003));
+		testFile.writeFile(lines);
+		OFile sortedFile = new OFile(COPY_FILE_NAME);
+
+		List<String> expected = new ArrayList<String>(lines);
+		expected.sort(null);
+		assertEqual(testFile.sortLines(sortedFile, Comparator.naturalOrder(),
+			false, 1 << 14), sortedFile, true);
+		assertEqual(sortedFile.readFile(),
+			String.join("\n", expected) + "\n", true);
+
+		expected = new ArrayList<String>(new TreeSet<String>(lines));
+		expected.sort(OFile.numericOrder());
+		testFile.sortLines(sortedFile, OFile.numericOrder(), true, 1 << 14);
+		assertEqual(sortedFile.readFile(),
+			String.join("\n", expected) + "\n", true);
+		assertEqual(sortedFile.countLines(), 5003, true);
+
+		testFile.sortLines(testFile, OFile.byKey(String::length));
+		assertEqual(testFile.read(), "0", true);
+		assertEqual(testFile.countLines(), (int)2e4, true);
+
+		assertDelete(sortedFile);
+		assertClear(testFile);
+	}
+
+	public void _testGrep() {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < (int)1e5; i++)
+			lines.add(String.format("Line Num: %d", (i + 1)));
+		testFile.writeFile(lines);
+
+		List<OFile.GrepMatch> matches = testFile.grep("Num: 4242");
+		assertEqual(matches.size(), 11, true);
+		OFile.GrepMatch match = matches.get(0);
+		assertEqual(match.getLineNumber(), 4242L, true);
+		assertEqual(match.getLine(), "Line Num: 4242", true);
+		assertEqual(match.getOffset() - match.getLineOffset(), 5L, true);
+		assertEqual(testFile.readFile().substring((int)match.getLineOffset(),
+			(int)match.getLineOffset() + 14), "Line Num: 4242", true);
+		assertEqual(matches.get(10).getLineNumber(), 42429L, true);
+
+		matches = testFile.grep(Pattern.compile("^Line Num: 9999[0-9]$"));
+		assertEqual(matches.size(), 10, true);
+		assertEqual(matches.get(0).getLineNumber(), 99990L, true);
+		assertEqual(matches.get(0).getOffset(), matches.get(0).getLineOffset(),
+			true);
+		assertEqual(testFile.grep("missing").size(), 0, true);
+
+		testFile.clear().write("first\r\nsecond line\r\nthird").close();
+		matches = testFile.grep("ir");
+		assertEqual(matches.size(), 2, true);
+		assertEqual(matches.get(1).getLineNumber(), 3L, true);
+		assertEqual(matches.get(0).getLine(), "first", true);
+		assertEqual(testFile.grep("").size(), 3, true);
+
+		assertClear(testFile);
+	}
+
+	public void _testSplitConcat() {
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < (int)1e4; i++)
+			lines.add(String.format("Line Num: %d", (i + 1)));
+		testFile.writeFile(lines);
+		String contents = testFile.readFile();
+		OFile joinedFile = new OFile(COPY_FILE_NAME);
+
+		OFile[] parts = testFile.split(10000);
+		assert parts.length > 1 : "File was not split!";
+		for (int i = 0; i < parts.length; i++) {
+			assert parts[i].readFile().endsWith("\n") :
+				String.format("Part %s is not line aligned!", parts[i].getPath());
+			assert parts[i].length() >= 10000 || i == parts.length - 1 :
+				String.format("Part %s is too short!", parts[i].getPath());
+		}
+		assertEqual(joinedFile.concat(parts).readFile(), contents, true);
+		assertDelete(parts);
+
+		parts = testFile.splitByLines(3000);
+		assertEqual(parts.length, 4, true);
+		assertEqual(parts[0].countLines(), 3000, true);
+		assertEqual(parts[3].countLines(), 1000, true);
+		assertEqual(parts[1].read(), "Line Num: 3001", true);
+		parts[1].close();
+		assertEqual(joinedFile.concat(parts).readFile(), contents, true);
+
+		assertEqual(testFile.splitByLines(5000).length, 2, true);
+		assertExists(testFile.getPath() + ".part2", false);
+		assertExists(testFile.getPath() + ".part3", false);
+		assertDelete(parts[0], parts[1]);
+
+		assertEqual(testFile.splitByLines(0), null, true);
+		assertEqual(testFile.split(0), null, true);
+		assertEqual(joinedFile.concat(testFile, joinedFile) == null, true,
+			true);
+		assertEqual(joinedFile.readFile(), contents, true);
+
+		assertDelete(joinedFile);
+		assertClear(testFile);
+	}
+
+	public void _testAsync() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		OFile.setAsyncExecutor(executor);
+
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < (int)1e5; i++)
+			large.append(String.format("Line Num: %d\n", (i + 1)));
+
+		testFile.writeAsync("first");
+		for (int i = 0; i < 10; i++)
+			testFile.appendAsync("," + i);
+		testFile.writeAsync(large.toString());
+		testFile.appendAsync("end").join();
+		assertEqual(testFile.readFileAsync().join(), large + "end", true);
+		assertEqual(testFile.getChecksumAsync().join(),
+			testFile.getChecksum(), true);
+
+		OFile copiedFile = testFile.copyAsync(TEST_DIR_NAME + "/" +
+			COPY_FILE_NAME).join();
+		assertEqual(copiedFile, testFile, true);
+		assertEqual(copiedFile.readFile(), large + "end", true);
+		testFile.copyAsync(testFile.getPath()).join();
+		assertEqual(testFile.readFile(), large + "end", true);
+
+		assertDelete(copiedFile.getParentFile());
+		assertClear(testFile);
+
+		OFile.setAsyncExecutor(null);
+		executor.shutdown();
+	}
+
+	public void _testTransferTo() {
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < (int)1e5; i++)
+			large.append(String.format("Line Num: %d\n", (i + 1)));
+		testFile.writeFile(large);
+		String contents = large.toString();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEqual(testFile.transferTo(out), testFile.length(), true);
+		assertEqual(out.toString(), contents, true);
+
+		out.reset();
+		assertEqual(testFile.transferTo(Channels.newChannel(out), 100,
+			(int)1e5), (long)1e5, true);
+		assertEqual(out.toString(), contents.substring(100, 100 + (int)1e5),
+			true);
+
+		OFile copiedFile = new OFile(COPY_FILE_NAME);
+		try (FileOutputStream fileOut = new FileOutputStream(copiedFile)) {
+			assertEqual(testFile.transferTo(fileOut, 5, 10), 10L, true);
+			assertEqual(testFile.transferTo(fileOut, testFile.length() - 3,
+				100), 3L, true);
+		} catch (IOException e) {
+			assert false : String.format("Error writing to %s!",
+				copiedFile.getPath());
+		}
+		assertEqual(copiedFile.readFile(), "Num: 1\nLin" +
+			contents.substring(contents.length() - 3), true);
+
+		try {
+			Pipe pipe = Pipe.open();
+			pipe.sink().configureBlocking(false);
+			long transferred = testFile.transferTo(pipe.sink());
+			assert transferred > 0 && transferred < testFile.length() :
+				String.format("Transferred %d bytes to a full pipe!", transferred);
+			pipe.sink().close();
+			pipe.source().close();
+		} catch (IOException e) {
+			assert false : "Error opening pipe!";
+		}
+
+		assertEqual(testFile.transferTo(new ByteArrayOutputStream(), -1, 10),
+			-1L, true);
+		assertEqual(testFile.transferTo(Channels.newChannel(
+			new ByteArrayOutputStream()), -1, 10), -1L, true);
+
+		assertDelete(copiedFile);
+		assertClear(testFile);
+	}
+
 	public void _testFileCopy() {
 		assertExists(COPY_FILE_NAME, false);
 
@@ -230,6 +615,191 @@ public class BugTester extends CodeTester {
 		assertDelete(dir, dir2, dir3.getParentFile(), dir4.getParentFile());
 	}
 
+	public void _testFindDuplicates() {
+		assertExists(TEST_DIR_NAME, false);
+
+		OFile dir = new OFile(TEST_DIR_NAME + "/");
+		new OFile(TEST_DIR_NAME + "/a.txt").write("same contents").close();
+		new OFile(TEST_DIR_NAME + "/sub/b.txt").write("same contents").close();
+		new OFile(TEST_DIR_NAME + "/c.txt").write("diff contents").close();
+
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 5000; i++)
+			large.append(i % 10);
+		OFile large1 = new OFile(TEST_DIR_NAME + "/large1.txt");
+		OFile large2 = new OFile(TEST_DIR_NAME + "/large2.txt");
+		OFile large3 = new OFile(TEST_DIR_NAME + "/sub/large3.txt");
+		large1.write(large.toString()).close();
+		large2.write(large.toString()).close();
+		large.setCharAt(large.length() / 2, 'x');
+		large3.write(large.toString()).close();
+
+		List<Set<OFile>> duplicates = OFile.findDuplicates(dir);
+		assertEqual(duplicates.size(), 2, true);
+		for (Set<OFile> group : duplicates) {
+			assertEqual(group.size(), 2, true);
+			assertEqual(group.contains(large3), false, true);
+		}
+
+		Path link = Paths.get(TEST_DIR_NAME, "sub", "link.txt");
+		Path loop = Paths.get(TEST_DIR_NAME, "sub", "loop");
+		Path hardLink = Paths.get(TEST_DIR_NAME, "sub", "hard.txt");
+		try {
+			Files.createSymbolicLink(link, Paths.get("..", "a.txt"));
+			Files.createSymbolicLink(loop, dir.getAbsoluteFile().toPath());
+			Files.createLink(hardLink, Paths.get(TEST_DIR_NAME, "c.txt"));
+		} catch (UnsupportedOperationException | IOException e) {
+			assertDelete(dir);
+			return;
+		}
+		duplicates = OFile.findDuplicates(dir);
+		assertEqual(duplicates.size(), 2, true);
+		for (Set<OFile> group : duplicates)
+			assertEqual(group.size(), 2, true);
+
+		try {
+			Files.delete(link);
+			Files.delete(loop);
+		} catch (IOException e) {
+			assertEqual(e, null, true);
+		}
+		assertDelete(dir);
+	}
+
+	public void _testSyncTo() {
+		assertExists(TEST_DIR_NAME, false);
+		assertExists(TEST_DIR_NAME + "2", false);
+
+		OFile dir = new OFile(TEST_DIR_NAME + "/");
+		OFile file1 = new OFile(TEST_DIR_NAME + "/a.txt").write("first");
+		OFile file2 = new OFile(TEST_DIR_NAME + "/sub/b.txt").write("second");
+		file1.close();
+		file2.close();
+
+		OFile.SyncSummary summary = dir.syncTo(TEST_DIR_NAME + "2");
+		assertEqual(summary.getCopied(), 2L, true);
+		assertEqual(summary.getFailed(), 0L, true);
+		OFile dir2 = new OFile(TEST_DIR_NAME + "2/");
+		assertEqual(dir, dir2, true);
+
+		summary = dir.syncTo(TEST_DIR_NAME + "2");
+		assertEqual(summary.getCopied(), 0L, true);
+		assertEqual(summary.getUnchanged(), 2L, true);
+
+		file2.write(" changed", true).close();
+		new OFile(TEST_DIR_NAME + "2/extra.txt").write("extra").close();
+		summary = dir.syncTo(TEST_DIR_NAME + "2", true);
+		assertEqual(summary.getCopied(), 1L, true);
+		assertEqual(summary.getUnchanged(), 1L, true);
+		assertEqual(summary.getDeleted(), 1L, true);
+		assertExists(TEST_DIR_NAME + "2/extra.txt", false);
+		assertEqual(dir, dir2, true);
+
+		assertDelete(dir, dir2);
+	}
+
+	public void _testDelta() {
+		StringBuilder base = new StringBuilder();
+		for (int i = 0; i < 5000; i++)
+			base.append(String.format("Line Num: %d\n", i * 7919 % 10007));
+
+		String[] updates = {
+			base.toString(),
+			base.substring(0, 20000) + "inserted" + base.substring(20000),
+			base.substring(3000),
+			"prefix" + base.substring(0, 40000),
+			base.toString().replace("Line Num: 42", "Changed: 42"),
+			"short",
+			base.substring(5120, 10240) + base.substring(0, 5120) +
+				base.substring(10240),
+			base.substring(25600) + base.substring(0, 25600)
+		};
+
+		for (int i = 0; i < updates.length; i++) {
+			testFile.clear().write(updates[i]).close();
+			new OFile(COPY_FILE_NAME).clear().write(base.toString()).close();
+			OFile copiedFile = new OFile(COPY_FILE_NAME);
+
+			OFile.Delta delta = testFile.createDelta(
+				copiedFile.getSignature(512));
+			assertEqual(delta.getLength(), testFile.length(), true);
+			assertEqual(copiedFile.applyDelta(delta) != null, true, true);
+			assertEqual(copiedFile.readFile(), updates[i], true);
+			if (i != 4)
+				assert delta.getLiteralBytes() < 1024 :
+					String.format("Delta %d stored %d literal bytes!", i,
+						delta.getLiteralBytes());
+		}
+		assertEqual(testFile.getSignature(0), null, true);
+		assertEqual(testFile.getSignature(-512), null, true);
+
+		assertDelete(new OFile(COPY_FILE_NAME));
+		assertClear(testFile);
+	}
+
+	public void _testSyncToWrongType() {
+		assertExists(TEST_DIR_NAME, false);
+		assertExists(TEST_DIR_NAME + "2", false);
+
+		OFile dir = new OFile(TEST_DIR_NAME + "/");
+		new OFile(TEST_DIR_NAME + "/keep.txt").write("keep").close();
+		testFile.write("file").close();
+
+		OFile.SyncSummary summary = testFile.syncTo(TEST_DIR_NAME);
+		assertEqual(summary.getFailed(), 1L, true);
+		assertEqual(summary.getDeleted(), 0L, true);
+		assertExists(TEST_DIR_NAME + "/keep.txt", true);
+
+		summary = dir.syncTo(testFile.getPath());
+		assertEqual(summary.getFailed(), 1L, true);
+		assertEqual(testFile.readFile(), "file", true);
+
+		OFile dir2 = new OFile(TEST_DIR_NAME + "2/");
+		new OFile(TEST_DIR_NAME + "2/keep.txt").write("keep").close();
+		summary = testFile.syncTo(TEST_DIR_NAME + "2", true);
+		assertEqual(summary.getDeleted(), 1L, true);
+		assertEqual(summary.getCopied(), 1L, true);
+		assertEqual(dir2.isFile(), true, true);
+
+		summary = dir.syncTo(TEST_DIR_NAME + "2", true);
+		assertEqual(summary.getDeleted(), 1L, true);
+		assertEqual(summary.getCopied(), 1L, true);
+		assertEqual(dir, new OFile(TEST_DIR_NAME + "2/"), true);
+
+		assertDelete(dir, new OFile(TEST_DIR_NAME + "2/"));
+		assertClear(testFile);
+	}
+
+	public void _testSyncToSymlink() {
+		OFile dir = new OFile(TEST_DIR_NAME + "/");
+		OFile precious = new OFile(TEST_DIR_NAME + "3/");
+		new OFile(TEST_DIR_NAME + "3/precious.txt").write("precious").close();
+		new OFile(TEST_DIR_NAME + "2/");
+		try {
+			Files.createSymbolicLink(Paths.get(TEST_DIR_NAME + "2", "link"),
+				precious.getAbsoluteFile().toPath());
+		} catch (UnsupportedOperationException | IOException e) {
+			assertDelete(dir, new OFile(TEST_DIR_NAME + "2/"), precious);
+			return;
+		}
+
+		new OFile(TEST_DIR_NAME + "/link/");
+		OFile.SyncSummary summary = dir.syncTo(TEST_DIR_NAME + "2");
+		assertEqual(summary.getFailed(), 1L, true);
+		assertExists(TEST_DIR_NAME + "3/precious.txt", true);
+
+		new OFile(TEST_DIR_NAME + "/link/").delete();
+		summary = dir.syncTo(TEST_DIR_NAME + "2", true);
+		assertEqual(summary.getDeleted(), 1L, true);
+		assertEqual(summary.getFailed(), 0L, true);
+		assertEqual(Files.exists(Paths.get(TEST_DIR_NAME + "2", "link"),
+			LinkOption.NOFOLLOW_LINKS), false, true);
+		assertEqual(new OFile(TEST_DIR_NAME + "3/precious.txt").readFile(),
+			"precious", true);
+
+		assertDelete(dir, new OFile(TEST_DIR_NAME + "2/"), precious);
+	}
+
 	private void assertEqual(byte[] b1, byte[] b2, boolean equal) {
 		assert Arrays.equals(b1, b2) == equal :
 			String.format("Byte arrays%s equal!", equal ? " not":"");
@@ -1,23 +1,77 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.io.FileNotFoundException;
+import java.io.OutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FileFilter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.PrintWriter;
 
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.OpenOption;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import java.security.MessageDigest;
 import java.security.DigestInputStream;
@@ -31,11 +85,119 @@ import java.security.NoSuchAlgorithmException;
  */
 public class OFile extends File {
 
+	/**
+	 * Size of the leading and trailing blocks hashed by
+	 * {@link #findDuplicates} before falling back to a full checksum.
+	 */
+	private static final int DUPLICATE_BLOCK_SIZE = 4096;
+
+	/**
+	 * Default block size used by {@link #getSignature()}.
+	 */
+	private static final int DELTA_BLOCK_SIZE = 4096;
+
+	/**
+	 * Largest run of literal bytes stored as a single {@link Delta} entry.
+	 */
+	private static final int MAX_LITERAL_SIZE = 1 << 20;
+
+	/**
+	 * Size of the direct buffers used by {@link #writeFile}.
+	 */
+	private static final int DIRECT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of direct buffers filled before each gathering write.
+	 */
+	private static final int GATHER_BUFFERS = 16;
+
+	/**
+	 * Size of the buffers used to write files, and the assumed file system
+	 * block size if it cannot be found.
+	 */
+	private static final int IO_BUFFER_SIZE = 8192;
+
+	/**
+	 * Smallest buffer size chosen by {@link #getBufferSize}.
+	 */
+	private static final int MIN_BUFFER_SIZE = 512;
+
+	/**
+	 * Largest buffer size chosen by {@link #getBufferSize}.
+	 */
+	private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Largest buffer size chosen for the {@link BufferedReader} and
+	 * {@link BufferedWriter}, whose char arrays are allocated on every open
+	 * and cannot be pooled.
+	 */
+	private static final int MAX_STREAM_BUFFER_SIZE = IO_BUFFER_SIZE;
+
+	/**
+	 * Buffer size used by all files without their own, or 0 to choose the
+	 * size from each file's length and block size.
+	 */
+	private static volatile int defaultBufferSize = 0;
+
+	/**
+	 * File system block sizes looked up by {@link #getBlockSize}, by parent
+	 * directory.
+	 */
+	private static final Map<Path, Integer> blockSizes =
+		new ConcurrentHashMap<Path, Integer>();
+
+	/**
+	 * Most directories whose block sizes are cached at once.
+	 */
+	private static final int MAX_CACHED_BLOCK_SIZES = 1024;
+
+	/**
+	 * The {@link BufferPool} that I/O buffers are borrowed from.
+	 */
+	private static volatile BufferPool bufferPool = new BufferPool();
+
+	/**
+	 * Default number of files read at once by {@link #readFiles}.
+	 */
+	private static final int DEFAULT_READ_PARALLELISM = 16;
+
+	/**
+	 * Estimated heap overhead in bytes of each line held by
+	 * {@link #sortLines}, on top of its characters.
+	 */
+	private static final int LINE_OVERHEAD = 48;
+
+	/**
+	 * Smallest number of bytes of lines sorted in memory as a single run by
+	 * {@link #sortLines}.
+	 */
+	private static final int MIN_RUN_SIZE = 1 << 12;
+
+	/**
+	 * Most sorted runs merged at once by {@link #sortLines}.
+	 */
+	private static final int MAX_MERGE_RUNS = 64;
+
+	/**
+	 * Smallest range of a file searched by each task in {@link #grep}.
+	 */
+	private static final int GREP_RANGE_SIZE = 1 << 20;
+
+	/**
+	 * The executor that asynchronous operations run on, or null to use the
+	 * default thread pools.
+	 */
+	private static volatile ExecutorService asyncExecutor = null;
+
 	private BufferedWriter bufferedWriter;
 	private BufferedReader bufferedReader;
 	private FileWriter fileWriter;
 	private boolean appending;
 	private boolean writerOpen, readerOpen;
+	private int bufferSize;
+	private CompletableFuture<OFile> pendingWrite =
+		CompletableFuture.completedFuture(this);
 
 	/**
 	 * Constructor with defined path to file.
@@ -146,16 +308,517 @@ public class OFile extends File {
 	public String readFile() {
 		close();
 		try {
-			FileChannel channel = new FileInputStream(this).getChannel();
-			ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
-			channel.read(buffer);
-			channel.close();
-			return new String(buffer.array());
-		}	catch (FileNotFoundException e) {}
-			catch (IOException e) {}
+			return readContents(this);
+		}	catch (IOException e) {}
 		return null;
 	}
 
+	/**
+	 * Reads the last lines of the file by reading backward from the end of
+	 * the file, so only the requested lines are read and decoded.
+	 * @param  n the number of lines to read
+	 * @return   the last n lines (or all lines if fewer) in order, or null on
+	 *           failure
+	 */
+	public List<String> readLastLines(int n) {
+		List<String> lines = new ArrayList<String>();
+		try (ReverseLineIterator iterator = reverseLines()) {
+			if (iterator == null)
+				return null;
+			while (lines.size() < n && iterator.hasNext())
+				lines.add(iterator.next());
+		} catch (UncheckedIOException e) {
+			return null;
+		}
+		Collections.reverse(lines);
+		return lines;
+	}
+
+	/**
+	 * Creates an iterator over the lines of the file from last to first,
+	 * reading backward from the end of the file in blocks.
+	 * @return the {@link ReverseLineIterator}, or null on failure
+	 */
+	public ReverseLineIterator reverseLines() {
+		close();
+		try {
+			return new ReverseLineIterator(FileChannel.open(toPath(),
+				StandardOpenOption.READ));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads many files concurrently, with at most {@code parallelism} files
+	 * being read at once.
+	 * @param  files       the files to read
+	 * @param  parallelism the maximum number of files read at once
+	 * @return             a map from each file to its {@link ReadResult}, in
+	 *                     completion order
+	 */
+	public static Map<File, ReadResult> readFiles(
+		Collection<? extends File> files, int parallelism) {
+		try (Stream<ReadResult> results = streamFiles(files, parallelism)) {
+			return results.collect(Collectors.toMap(ReadResult::getFile,
+				result -> result, (first, second) -> first,
+				LinkedHashMap::new));
+		}
+	}
+
+	/**
+	 * Reads many files concurrently with the default parallelism.
+	 * @param  files the files to read
+	 * @return       a map from each file to its {@link ReadResult}, in
+	 *               completion order
+	 */
+	public static Map<File, ReadResult> readFiles(
+		Collection<? extends File> files) {
+		return readFiles(files, DEFAULT_READ_PARALLELISM);
+	}
+
+	/**
+	 * Reads many files concurrently, with at most {@code parallelism} files
+	 * being read at once, streaming the results as each file is read.
+	 * Closing the stream cancels any reads that have not started.
+	 * @param  files       the files to read
+	 * @param  parallelism the maximum number of files read at once
+	 * @return             a stream of {@link ReadResult}s in completion order
+	 */
+	public static Stream<ReadResult> streamFiles(
+		Collection<? extends File> files, int parallelism) {
+		if (files.isEmpty())
+			return Stream.empty();
+		ExecutorService executor = newExecutor(
+			Math.min(parallelism, files.size()), "OFile-reader");
+		BlockingQueue<ReadResult> completed =
+			new LinkedBlockingQueue<ReadResult>();
+		for (File file : files)
+			executor.execute(() -> {
+				ReadResult result = null;
+				try {
+					result = readResult(file);
+				} finally {
+					completed.add(result != null ? result:new ReadResult(file,
+						null, new IOException("Error reading " + file.getPath())));
+				}
+			});
+		executor.shutdown();
+
+		return Stream.generate(() -> {
+			try {
+				return completed.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException("Interrupted reading files");
+			}
+		}).limit(files.size()).onClose(executor::shutdownNow);
+	}
+
+	/**
+	 * Creates a fixed thread pool of daemon threads.
+	 * @param  threads the number of threads
+	 * @param  name    the name of each thread
+	 * @return         the {@link ExecutorService}
+	 */
+	private static ExecutorService newExecutor(int threads, String name) {
+		return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Reads a file into a {@link ReadResult}, recording any error, including
+	 * errors such as running out of memory for the file's contents.
+	 * @param  file the {@link File} to read
+	 * @return      the {@link ReadResult}
+	 */
+	private static ReadResult readResult(File file) {
+		try {
+			return new ReadResult(file, readContents(file), null);
+		} catch (IOException | RuntimeException | Error e) {
+			return new ReadResult(file, null, e);
+		}
+	}
+
+	/**
+	 * Reads a whole file as a string.
+	 * @param  file        the {@link File} to read
+	 * @return             the whole file as string
+	 * @throws IOException if reading fails
+	 */
+	private static String readContents(File file) throws IOException {
+		try (FileChannel channel = new FileInputStream(file).getChannel()) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new IOException(file.getPath() + " is too large to read");
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			readFully(channel, buffer, 0);
+			return new String(buffer.array(), 0, buffer.position());
+		}
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with a string,
+	 * encoding it into direct buffers written with gathering writes.
+	 * @param  str    the string to write
+	 * @param  atomic true to write to a temporary file and rename it over
+	 *                this file, so readers never see a partial write
+	 * @return        OFile instance
+	 */
+	public OFile writeFile(CharSequence str, boolean atomic) {
+		return writeFile(Collections.singletonList(str), false, atomic);
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with a string.
+	 * @param  str the string to write
+	 * @return     OFile instance
+	 */
+	public OFile writeFile(CharSequence str) {
+		return writeFile(str, false);
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with lines, each
+	 * followed by a newline.
+	 * @param  lines  the lines to write
+	 * @param  atomic true to write to a temporary file and rename it over
+	 *                this file, so readers never see a partial write
+	 * @return        OFile instance
+	 */
+	public OFile writeFile(Iterable<? extends CharSequence> lines,
+		boolean atomic) {
+		return writeFile(lines, true, atomic);
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with lines, each
+	 * followed by a newline.
+	 * @param  lines the lines to write
+	 * @return       OFile instance
+	 */
+	public OFile writeFile(Iterable<? extends CharSequence> lines) {
+		return writeFile(lines, false);
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with bytes.
+	 * @param  bytes  the bytes to write
+	 * @param  atomic true to write to a temporary file and rename it over
+	 *                this file, so readers never see a partial write
+	 * @return        OFile instance
+	 */
+	public OFile writeFile(byte[] bytes, boolean atomic) {
+		return writeFile(channel -> {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}, atomic);
+	}
+
+	/**
+	 * Replaces the contents of the file super-efficiently with bytes.
+	 * @param  bytes the bytes to write
+	 * @return       OFile instance
+	 */
+	public OFile writeFile(byte[] bytes) {
+		return writeFile(bytes, false);
+	}
+
+	/**
+	 * Encodes strings into pooled direct buffers and writes them with
+	 * gathering writes once all the buffers are full.
+	 * @param  parts    the strings to write
+	 * @param  newlines true to follow each string with a newline
+	 * @param  atomic   true to write to a temporary file and rename it
+	 * @return          OFile instance
+	 */
+	private OFile writeFile(Iterable<? extends CharSequence> parts,
+		boolean newlines, boolean atomic) {
+		return writeFile(channel -> {
+			CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			BufferPool pool = bufferPool;
+			ByteBuffer[] buffers = new ByteBuffer[GATHER_BUFFERS];
+			buffers[0] = pool.borrowDirect(DIRECT_BUFFER_SIZE);
+			int count = 1;
+			try {
+				for (CharSequence part : parts)
+					for (int i = 0; i < (newlines ? 2:1); i++) {
+						CharBuffer in = CharBuffer.wrap(i == 0 ? part:"\n");
+						while (encoder.encode(in, buffers[count - 1], false)
+							.isOverflow())
+							count = nextBuffer(channel, pool, buffers, count);
+					}
+				CharBuffer end = CharBuffer.allocate(0);
+				while (encoder.encode(end, buffers[count - 1], true).isOverflow())
+					count = nextBuffer(channel, pool, buffers, count);
+				while (encoder.flush(buffers[count - 1]).isOverflow())
+					count = nextBuffer(channel, pool, buffers, count);
+				writeFully(channel, buffers, count);
+			} finally {
+				for (int i = 0; i < buffers.length; i++)
+					if (buffers[i] != null)
+						pool.release(buffers[i]);
+			}
+		}, atomic);
+	}
+
+	/**
+	 * Opens a channel that replaces the file's contents and passes it to a
+	 * {@link ChannelWriter}, optionally through a temporary file that is
+	 * renamed over this file (or the file it links to) once fully written.
+	 * @param  writer the {@link ChannelWriter} that writes the contents
+	 * @param  atomic true to write to a temporary file and rename it
+	 * @return        OFile instance
+	 */
+	private OFile writeFile(ChannelWriter writer, boolean atomic) {
+		close();
+		Path target = toPath().toAbsolutePath();
+		Path path = atomic ? null:target;
+		try {
+			if (atomic) {
+				if (Files.exists(target))
+					target = target.toRealPath();
+				path = Files.createTempFile(target.getParent(),
+					"." + target.getFileName(), ".tmp");
+				copyPermissions(target, path);
+			}
+			try (FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+				writer.writeTo(channel);
+				if (atomic)
+					channel.force(false);
+			}
+			if (atomic) {
+				try {
+					Files.move(path, target, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(path, target,
+						StandardCopyOption.REPLACE_EXISTING);
+				}
+			}
+			return this;
+		} catch (IOException e) {
+			if (path != null && path != target)
+				try {
+					Files.deleteIfExists(path);
+				} catch (IOException e2) {}
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the POSIX permissions of an existing file to another file, so a
+	 * temporary file renamed over it keeps the original mode rather than the
+	 * temporary file's 0600. Does nothing if the source does not exist or the
+	 * file system does not support POSIX permissions.
+	 * @param  source      the file to copy permissions from
+	 * @param  target      the file to copy permissions to
+	 * @throws IOException if the permissions cannot be read or set
+	 */
+	private static void copyPermissions(Path source, Path target)
+		throws IOException {
+		if (!Files.exists(source))
+			return;
+		try {
+			Files.setPosixFilePermissions(target,
+				Files.getPosixFilePermissions(source));
+		} catch (UnsupportedOperationException e) {}
+	}
+
+	/**
+	 * Writes the contents of buffers to a channel with gathering writes,
+	 * then clears the buffers for reuse.
+	 * @param  channel     the {@link FileChannel} to write to
+	 * @param  buffers     the filled buffers
+	 * @param  count       the number of buffers to write
+	 * @throws IOException if writing fails
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer[] buffers,
+		int count) throws IOException {
+		long remaining = 0;
+		for (int i = 0; i < count; i++)
+			remaining += buffers[i].flip().remaining();
+		while (remaining > 0)
+			remaining -= channel.write(buffers, 0, count);
+		for (int i = 0; i < count; i++)
+			buffers[i].clear();
+	}
+
+	/**
+	 * Moves on to the next buffer to encode into, first writing out all the
+	 * buffers if they are full.
+	 * @param  channel     the {@link FileChannel} to write to
+	 * @param  pool        the {@link BufferPool} to borrow buffers from
+	 * @param  buffers     the buffers being filled
+	 * @param  count       the number of buffers in use
+	 * @return             the new number of buffers in use
+	 * @throws IOException if writing fails
+	 */
+	private static int nextBuffer(FileChannel channel, BufferPool pool,
+		ByteBuffer[] buffers, int count) throws IOException {
+		if (count < buffers.length) {
+			if (buffers[count] == null)
+				buffers[count] = pool.borrowDirect(DIRECT_BUFFER_SIZE);
+			return count + 1;
+		}
+		writeFully(channel, buffers, count);
+		return 1;
+	}
+
+	/**
+	 * Gets the {@link BufferPool} that I/O buffers are borrowed from.
+	 * @return the shared {@link BufferPool}
+	 */
+	public static BufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Replaces the {@link BufferPool} that I/O buffers are borrowed from,
+	 * e.g. to change its size classes or memory budget.
+	 * @param pool the new {@link BufferPool}
+	 */
+	public static void setBufferPool(BufferPool pool) {
+		bufferPool = pool;
+	}
+
+	/**
+	 * Sets the buffer size used to read and write this file, overriding the
+	 * default buffer size. Takes effect the next time a reader or writer is
+	 * opened.
+	 * @param  bufferSize the buffer size in bytes, or 0 to use the default
+	 * @return            OFile instance
+	 */
+	public OFile setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+		return this;
+	}
+
+	/**
+	 * Gets the buffer size used to read this file. Unless overridden, this is
+	 * the file's length rounded up to a power of two, at least the file
+	 * system block size for files that span a block, and at most 1 MB.
+	 * @return the buffer size in bytes
+	 */
+	public int getBufferSize() {
+		return getBufferSize(false);
+	}
+
+	/**
+	 * Sets the buffer size used by all files without their own buffer size.
+	 * @param bufferSize the buffer size in bytes, or 0 to choose the size from
+	 *                   each file's length and block size
+	 */
+	public static void setDefaultBufferSize(int bufferSize) {
+		defaultBufferSize = bufferSize;
+	}
+
+	/**
+	 * Chooses the buffer size to read or write this file with.
+	 * @param  writing true if the buffer is for writing
+	 * @return         the buffer size in bytes
+	 */
+	private int getBufferSize(boolean writing) {
+		if (bufferSize > 0)
+			return bufferSize;
+		if (defaultBufferSize > 0)
+			return defaultBufferSize;
+		if (writing)
+			return Math.max(getBlockSize(this), IO_BUFFER_SIZE);
+		return chooseBufferSize(this);
+	}
+
+	/**
+	 * Chooses the buffer size of the {@link BufferedReader} or
+	 * {@link BufferedWriter}, capping a size chosen from the file's length
+	 * and block size so that reopening a large file stays cheap.
+	 * @param  writing true if the buffer is for writing
+	 * @return         the buffer size in chars
+	 */
+	private int getStreamBufferSize(boolean writing) {
+		int size = getBufferSize(writing);
+		if (bufferSize > 0 || defaultBufferSize > 0)
+			return size;
+		return Math.min(size, MAX_STREAM_BUFFER_SIZE);
+	}
+
+	/**
+	 * Chooses the buffer size to read any file with.
+	 * @param  file the {@link File} to read
+	 * @return      the buffer size in bytes
+	 */
+	private static int getBufferSize(File file) {
+		if (file instanceof OFile)
+			return ((OFile)file).getBufferSize(false);
+		if (defaultBufferSize > 0)
+			return defaultBufferSize;
+		return chooseBufferSize(file);
+	}
+
+	/**
+	 * Chooses the buffer size to read a file with from its length, only
+	 * looking up the file system block size for files that could span one.
+	 * @param  file the {@link File} to read
+	 * @return      the buffer size in bytes
+	 */
+	private static int chooseBufferSize(File file) {
+		long length = file.length();
+		return chooseBufferSize(length,
+			length > MIN_BUFFER_SIZE ? getBlockSize(file):MIN_BUFFER_SIZE);
+	}
+
+	/**
+	 * Rounds a file length up to a power of two buffer size that is at least
+	 * the block size if the file spans a block.
+	 * @param  length    the file length in bytes
+	 * @param  blockSize the file system block size in bytes
+	 * @return           the buffer size in bytes
+	 */
+	private static int chooseBufferSize(long length, int blockSize) {
+		if (length >= MAX_BUFFER_SIZE)
+			return MAX_BUFFER_SIZE;
+		int size = Math.max(MIN_BUFFER_SIZE,
+			Integer.highestOneBit((int)Math.max(length - 1, 1)) << 1);
+		return length >= blockSize ? Math.max(size, blockSize):size;
+	}
+
+	/**
+	 * Gets the block size of the file system a file is stored on, cached by
+	 * the file's parent directory since looking up the file store is slow.
+	 * @param  file the {@link File} to check
+	 * @return      the block size in bytes, or a default if unknown
+	 */
+	private static int getBlockSize(File file) {
+		Path parent = file.toPath().toAbsolutePath().getParent();
+		Integer cached = parent == null ? null:blockSizes.get(parent);
+		if (cached != null)
+			return cached;
+
+		int blockSize = IO_BUFFER_SIZE;
+		try {
+			long fileStoreBlockSize = Files.getFileStore(file.toPath())
+				.getBlockSize();
+			if (fileStoreBlockSize > 0 && fileStoreBlockSize <= MAX_BUFFER_SIZE)
+				blockSize = (int)fileStoreBlockSize;
+		} catch (IOException | UnsupportedOperationException e) {
+			return blockSize;
+		}
+		if (parent != null) {
+			if (blockSizes.size() >= MAX_CACHED_BLOCK_SIZES)
+				blockSizes.clear();
+			blockSizes.put(parent, blockSize);
+		}
+		return blockSize;
+	}
+
 	/**
 	 * Creates and opens {@link BufferedWriter} instance,
 	 * closing {@link BufferedReader} instance if necessary.
@@ -166,7 +829,8 @@ public class OFile extends File {
 			closeReader();
 		try {
 			fileWriter = new FileWriter(this, appending);
-			bufferedWriter = new BufferedWriter(fileWriter);
+			bufferedWriter = new BufferedWriter(fileWriter,
+				getStreamBufferSize(true));
 			writerOpen = true;
 		}	catch (IOException e) {}
 		return writerOpen ? this:null;
@@ -181,7 +845,8 @@ public class OFile extends File {
 		if (writerOpen)
 			closeWriter();
 		try {
-			bufferedReader = new BufferedReader(new FileReader(this));
+			bufferedReader = new BufferedReader(new FileReader(this),
+				getStreamBufferSize(false));
 			readerOpen = true;
 		}	catch (IOException e) {}
 		return readerOpen ? this:null;
@@ -290,40 +955,570 @@ public class OFile extends File {
 	}
 
 	/**
-	 * Checks if two files are equal by matching their checksums.
-	 * @param  file1         a {@link File} to compare with
-	 * @param  file2         a {@link File} to compare with
-	 * @param  nameSensitive care about name of files
-	 * @return               true if equal, false otherwise
+	 * Incrementally syncs this file or directory to a destination, copying
+	 * only new or changed files. Files with matching sizes and modification
+	 * times are skipped, and files with matching sizes but different
+	 * modification times are only copied if their checksums differ.
+	 * @param  destination a path to the destination
+	 * @param  deleteExtra true to delete destination files not in the source
+	 * @return             a {@link SyncSummary} of the changes made
 	 */
-	private static boolean filesEqual(File file1, File file2,
-		boolean nameSensitive) {
-		if (file1.isDirectory() != file2.isDirectory())
-			return false;
+	public SyncSummary syncTo(String destination, boolean deleteExtra) {
+		close();
+		SyncSummary summary = new SyncSummary();
+		List<File[]> pairs = new ArrayList<File[]>();
+		collectSyncPairs(this, new File(destination), deleteExtra, pairs,
+			summary);
+		pairs.parallelStream()
+			.forEach(pair -> syncFile(pair[0], pair[1], summary));
+		return summary;
+	}
 
-		if (nameSensitive && !file1.getName().equals(file2.getName()))
-			return false;
+	/**
+	 * Incrementally syncs this file or directory to a destination, copying
+	 * only new or changed files and keeping extra destination files.
+	 * @param  destination a path to the destination
+	 * @return             a {@link SyncSummary} of the changes made
+	 */
+	public SyncSummary syncTo(String destination) {
+		return syncTo(destination, false);
+	}
 
-		if (file1.isDirectory())
-			return directoriesEqual(file1, file2, true);
+	/**
+	 * Walks the source tree, creating destination directories and collecting
+	 * the pairs of files that need to be compared.
+	 * @param source      the source file or directory
+	 * @param destination the matching destination file or directory
+	 * @param deleteExtra true to delete destination files not in the source
+	 * @param pairs       the list to add {source, destination} pairs to
+	 * @param summary     the summary to record deletions and failures in
+	 */
+	private static void collectSyncPairs(File source, File destination,
+		boolean deleteExtra, List<File[]> pairs, SyncSummary summary) {
+		if (!source.isDirectory()) {
+			if (!destination.isDirectory() ||
+				replaceDestination(destination, deleteExtra, summary))
+				pairs.add(new File[] {source, destination});
+			return;
+		}
 
-		byte[] file1Checksum = createChecksum(file1);
+		if ((destination.isFile() || Files.isSymbolicLink(destination.toPath())) &&
+			!replaceDestination(destination, deleteExtra, summary))
+			return;
+		destination.mkdirs();
 
-		if (file1Checksum == null) {
-			System.err.printf("Error getting %s checksum!", file1.getPath());
-			return false;
+		String[] names = source.list();
+		if (names == null) {
+			summary.failed.incrementAndGet();
+			return;
 		}
+		for (int i = 0; i < names.length; i++)
+			collectSyncPairs(new File(source, names[i]),
+				new File(destination, names[i]), deleteExtra, pairs, summary);
 
-		byte[] file2Checksum = createChecksum(file2);
-		if (file2Checksum == null) {
-			System.err.printf("Error getting %s checksum!", file2.getPath());
-			return false;
-		}
+		if (!deleteExtra)
+			return;
+		Set<String> sourceNames = new HashSet<String>(Arrays.asList(names));
+		File[] destinationFiles = destination.listFiles();
+		for (int i = 0; i < destinationFiles.length; i++)
+			if (!sourceNames.contains(destinationFiles[i].getName())) {
+				if (deleteTree(destinationFiles[i]))
+					summary.deleted.incrementAndGet();
+				else summary.failed.incrementAndGet();
+			}
+	}
 
-		for (int i = 0; i < file1Checksum.length; i++)
-			if (file1Checksum[i] != file2Checksum[i])
-				return false;
-		return true;
+	/**
+	 * Deletes a destination file or directory of the wrong type so that it can
+	 * be replaced, but only if extra destination files may be deleted.
+	 * @param  destination the destination file or directory
+	 * @param  deleteExtra true to delete destination files not in the source
+	 * @param  summary     the summary to record the deletion or failure in
+	 * @return             true if the destination was deleted, false otherwise
+	 */
+	private static boolean replaceDestination(File destination,
+		boolean deleteExtra, SyncSummary summary) {
+		if (deleteExtra && deleteTree(destination)) {
+			summary.deleted.incrementAndGet();
+			return true;
+		}
+		summary.failed.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Deletes a file or directory tree without following symbolic links, so a
+	 * link is removed rather than the files it points to.
+	 * @param  file the file or directory to delete
+	 * @return      true if everything was deleted, false otherwise
+	 */
+	private static boolean deleteTree(File file) {
+		try {
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path path,
+					BasicFileAttributes attributes) throws IOException {
+					Files.delete(path);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir,
+					IOException e) throws IOException {
+					if (e != null)
+						throw e;
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Copies a single file to its destination if it is new or has changed.
+	 * @param source      the source file
+	 * @param destination the destination file
+	 * @param summary     the summary to record the result in
+	 */
+	private static void syncFile(File source, File destination,
+		SyncSummary summary) {
+		long size = source.length();
+		long lastModified = source.lastModified();
+		if (destination.isFile() && destination.length() == size) {
+			if (destination.lastModified() == lastModified) {
+				summary.unchanged.incrementAndGet();
+				return;
+			}
+			byte[] sourceChecksum = createChecksum(source);
+			if (sourceChecksum != null &&
+				Arrays.equals(sourceChecksum, createChecksum(destination))) {
+				destination.setLastModified(lastModified);
+				summary.unchanged.incrementAndGet();
+				return;
+			}
+		}
+		try {
+			Files.copy(source.toPath(), destination.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.COPY_ATTRIBUTES);
+			summary.copied.incrementAndGet();
+			summary.bytesCopied.addAndGet(size);
+		} catch (IOException e) {
+			summary.failed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Sets the executor that asynchronous operations run on.
+	 * @param executor the {@link ExecutorService}, or null to use the default
+	 *                 thread pools
+	 */
+	public static void setAsyncExecutor(ExecutorService executor) {
+		asyncExecutor = executor;
+	}
+
+	/**
+	 * Reads whole file as string without blocking the calling thread.
+	 * @return a {@link CompletableFuture} of the whole file as string
+	 */
+	public CompletableFuture<String> readFileAsync() {
+		close();
+		return openAsync(this, StandardOpenOption.READ)
+			.thenCompose(channel -> {
+				try {
+					long size = channel.size();
+					if (size > Integer.MAX_VALUE)
+						throw new IOException(getPath() + " is too large to read");
+					ByteBuffer buffer = ByteBuffer.allocate((int)size);
+					return readFullyAsync(channel, buffer, 0)
+						.thenApply(numRead -> new String(buffer.array(), 0, numRead))
+						.whenComplete((contents, e) -> closeQuietly(channel));
+				} catch (IOException e) {
+					closeQuietly(channel);
+					return CompletableFuture.failedFuture(e);
+				}
+			});
+	}
+
+	/**
+	 * Replaces the contents of the file with a string without blocking the
+	 * calling thread. Asynchronous writes to the same {@code OFile} are
+	 * applied in the order they are made.
+	 * @param  str string to write
+	 * @return     a {@link CompletableFuture} of this OFile instance
+	 */
+	public CompletableFuture<OFile> writeAsync(String str) {
+		return writeAsync(str, false);
+	}
+
+	/**
+	 * Appends a string to the file without blocking the calling thread.
+	 * Asynchronous writes to the same {@code OFile} are applied in the order
+	 * they are made.
+	 * @param  str string to append
+	 * @return     a {@link CompletableFuture} of this OFile instance
+	 */
+	public CompletableFuture<OFile> appendAsync(String str) {
+		return writeAsync(str, true);
+	}
+
+	/**
+	 * Writes a string to the file once all earlier asynchronous writes to this
+	 * {@code OFile} have finished.
+	 * @param  str       string to write
+	 * @param  appending true to append, false to replace the contents
+	 * @return           a {@link CompletableFuture} of this OFile instance
+	 */
+	private synchronized CompletableFuture<OFile> writeAsync(String str,
+		boolean appending) {
+		close();
+		ByteBuffer buffer = ByteBuffer.wrap(str.getBytes());
+		OpenOption[] options = appending ?
+			new OpenOption[] {StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE} :
+			new OpenOption[] {StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING};
+		CompletableFuture<OFile> write = pendingWrite
+			.handle((previous, e) -> null)
+			.thenCompose(previous -> openAsync(this, options))
+			.thenCompose(channel -> {
+				try {
+					return writeFullyAsync(channel, buffer,
+						appending ? channel.size():0)
+						.whenComplete((v, e) -> closeQuietly(channel));
+				} catch (IOException e) {
+					closeQuietly(channel);
+					return CompletableFuture.failedFuture(e);
+				}
+			}).thenApply(v -> this);
+		pendingWrite = write;
+		return write;
+	}
+
+	/**
+	 * Gets this file's checksum without blocking the calling thread.
+	 * @return a {@link CompletableFuture} of the checksum
+	 */
+	public CompletableFuture<byte[]> getChecksumAsync() {
+		close();
+		MessageDigest complete;
+		try {
+			complete = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			return CompletableFuture.failedFuture(e);
+		}
+		int[] size = new int[1];
+		return openAsync(this, () -> size[0] = getBufferSize(false),
+			StandardOpenOption.READ).thenCompose(channel -> {
+			BufferPool pool = bufferPool;
+			ByteBuffer buffer = pool.borrowDirect(size[0]);
+			CompletableFuture<byte[]> checksum = new CompletableFuture<byte[]>();
+			digestAsync(channel, complete, buffer, size[0], 0, checksum);
+			return checksum.whenComplete((digest, e) -> {
+				closeQuietly(channel);
+				pool.release(buffer);
+			});
+		});
+	}
+
+	/**
+	 * Copies file to new destination without blocking the calling thread,
+	 * replacing existing file if present. Directories, and files copied onto
+	 * themselves, are copied with {@link #copyReplace} on the asynchronous
+	 * executor.
+	 * @param  destination a path to the destination
+	 * @return             a {@link CompletableFuture} of the new file
+	 */
+	public CompletableFuture<OFile> copyAsync(String destination) {
+		close();
+		return supplyAsync(() -> isDirectory() || isSameFile(destination))
+			.thenCompose(replace -> replace ?
+				supplyAsync(() -> copyReplace(destination)) :
+				copyFileAsync(destination));
+	}
+
+	/**
+	 * Checks whether a path refers to this file, following links.
+	 * @param  path the path to check
+	 * @return      true if the path exists and is this file, false otherwise
+	 */
+	private boolean isSameFile(String path) {
+		try {
+			return fileExists(path) &&
+				Files.isSameFile(toPath(), new File(path).toPath());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Copies a regular file to new destination without blocking the calling
+	 * thread, replacing existing file if present.
+	 * @param  destination a path to the destination
+	 * @return             a {@link CompletableFuture} of the new file
+	 */
+	private CompletableFuture<OFile> copyFileAsync(String destination) {
+		int[] size = new int[1];
+		return openAsync(this, () -> size[0] = getBufferSize(false),
+			StandardOpenOption.READ).thenCompose(source ->
+			openAsync(new File(destination), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+			.whenComplete((target, e) -> {
+				if (e != null)
+					closeQuietly(source);
+			}).thenCompose(target -> {
+				BufferPool pool = bufferPool;
+				ByteBuffer buffer = pool.borrowDirect(size[0]);
+				CompletableFuture<Void> copy = new CompletableFuture<Void>();
+				transferAsync(source, target, buffer, size[0], 0, copy);
+				return copy.whenComplete((v, e) -> {
+					closeQuietly(source);
+					closeQuietly(target);
+					pool.release(buffer);
+				});
+			})).thenApply(v -> new OFile(destination));
+	}
+
+	/**
+	 * Opens an {@link AsynchronousFileChannel} on the asynchronous executor,
+	 * creating the file's parent directories if the file may be created.
+	 * @param  file    the {@link File} to open
+	 * @param  options the options to open the file with
+	 * @return         a {@link CompletableFuture} of the channel
+	 */
+	private static CompletableFuture<AsynchronousFileChannel> openAsync(
+		File file, OpenOption... options) {
+		return openAsync(file, () -> {}, options);
+	}
+
+	/**
+	 * Opens an {@link AsynchronousFileChannel} on the asynchronous executor,
+	 * creating the file's parent directories if the file may be created.
+	 * @param  file    the {@link File} to open
+	 * @param  prepare work to run on the executor before opening, such as
+	 *                 choosing a buffer size
+	 * @param  options the options to open the file with
+	 * @return         a {@link CompletableFuture} of the channel
+	 */
+	private static CompletableFuture<AsynchronousFileChannel> openAsync(
+		File file, Runnable prepare, OpenOption... options) {
+		ExecutorService executor = asyncExecutor;
+		Set<OpenOption> optionSet =
+			new HashSet<OpenOption>(Arrays.asList(options));
+		return supplyAsync(() -> {
+			prepare.run();
+			try {
+				File parentFile = file.getAbsoluteFile().getParentFile();
+				if (optionSet.contains(StandardOpenOption.CREATE) &&
+					parentFile != null)
+					parentFile.mkdirs();
+				return AsynchronousFileChannel.open(file.toPath(), optionSet,
+					executor);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Runs a supplier on the asynchronous executor.
+	 * @param  supplier the {@link Supplier} to run
+	 * @return          a {@link CompletableFuture} of the supplied value
+	 */
+	private static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+		ExecutorService executor = asyncExecutor;
+		return executor == null ? CompletableFuture.supplyAsync(supplier):
+			CompletableFuture.supplyAsync(supplier, executor);
+	}
+
+	/**
+	 * Reads from an asynchronous channel until the buffer is full or the end
+	 * of the channel is reached.
+	 * @param  channel  the {@link AsynchronousFileChannel} to read from
+	 * @param  buffer   the buffer to fill
+	 * @param  position the file position to start reading at
+	 * @return          a {@link CompletableFuture} of the number of bytes read
+	 */
+	private static CompletableFuture<Integer> readFullyAsync(
+		AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		if (!buffer.hasRemaining()) {
+			future.complete(0);
+			return future;
+		}
+		try {
+			channel.read(buffer, position, 0,
+				new CompletionHandler<Integer, Integer>() {
+				@Override
+				public void completed(Integer numRead, Integer total) {
+					if (numRead == -1 || !buffer.hasRemaining()) {
+						future.complete(total + Math.max(numRead, 0));
+						return;
+					}
+					try {
+						channel.read(buffer, position + total + numRead,
+							total + numRead, this);
+					} catch (RuntimeException e) {
+						future.completeExceptionally(e);
+					}
+				}
+
+				@Override
+				public void failed(Throwable e, Integer total) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Writes the whole contents of a buffer to an asynchronous channel.
+	 * @param  channel  the {@link AsynchronousFileChannel} to write to
+	 * @param  buffer   the buffer to write
+	 * @param  position the file position to start writing at
+	 * @return          a {@link CompletableFuture} completed once written
+	 */
+	private static CompletableFuture<Void> writeFullyAsync(
+		AsynchronousFileChannel channel, ByteBuffer buffer, long position) {
+		CompletableFuture<Void> future = new CompletableFuture<Void>();
+		if (!buffer.hasRemaining()) {
+			future.complete(null);
+			return future;
+		}
+		try {
+			channel.write(buffer, position, position,
+				new CompletionHandler<Integer, Long>() {
+				@Override
+				public void completed(Integer numWritten, Long start) {
+					if (!buffer.hasRemaining()) {
+						future.complete(null);
+						return;
+					}
+					try {
+						channel.write(buffer, start + numWritten,
+							start + numWritten, this);
+					} catch (RuntimeException e) {
+						future.completeExceptionally(e);
+					}
+				}
+
+				@Override
+				public void failed(Throwable e, Long start) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Digests an asynchronous channel one buffer at a time from a position.
+	 * @param channel  the {@link AsynchronousFileChannel} to digest
+	 * @param digest   the {@link MessageDigest} to update
+	 * @param buffer   the buffer to read into
+	 * @param size     the number of bytes to read at a time
+	 * @param position the file position to continue from
+	 * @param checksum the future to complete with the digest
+	 */
+	private static void digestAsync(AsynchronousFileChannel channel,
+		MessageDigest digest, ByteBuffer buffer, int size, long position,
+		CompletableFuture<byte[]> checksum) {
+		buffer.clear().limit(size);
+		readFullyAsync(channel, buffer, position).whenComplete((numRead, e) -> {
+			if (e != null) {
+				checksum.completeExceptionally(e);
+				return;
+			}
+			buffer.flip();
+			digest.update(buffer);
+			if (numRead < size)
+				checksum.complete(digest.digest());
+			else digestAsync(channel, digest, buffer, size, position + numRead,
+				checksum);
+		});
+	}
+
+	/**
+	 * Copies an asynchronous channel to another one buffer at a time from a
+	 * position.
+	 * @param source   the {@link AsynchronousFileChannel} to copy from
+	 * @param target   the {@link AsynchronousFileChannel} to copy to
+	 * @param buffer   the buffer to copy through
+	 * @param size     the number of bytes to copy at a time
+	 * @param position the file position to continue from
+	 * @param copy     the future to complete once copied
+	 */
+	private static void transferAsync(AsynchronousFileChannel source,
+		AsynchronousFileChannel target, ByteBuffer buffer, int size,
+		long position, CompletableFuture<Void> copy) {
+		buffer.clear().limit(size);
+		readFullyAsync(source, buffer, position).thenCompose(numRead -> {
+			buffer.flip();
+			return writeFullyAsync(target, buffer, position)
+				.thenApply(v -> numRead);
+		}).whenComplete((numRead, e) -> {
+			if (e != null)
+				copy.completeExceptionally(e);
+			else if (numRead < size)
+				copy.complete(null);
+			else transferAsync(source, target, buffer, size,
+				position + numRead, copy);
+		});
+	}
+
+	/**
+	 * Closes an asynchronous channel, ignoring any error.
+	 * @param channel the {@link AsynchronousFileChannel} to close
+	 */
+	private static void closeQuietly(AsynchronousFileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+
+	/**
+	 * Checks if two files are equal by matching their checksums.
+	 * @param  file1         a {@link File} to compare with
+	 * @param  file2         a {@link File} to compare with
+	 * @param  nameSensitive care about name of files
+	 * @return               true if equal, false otherwise
+	 */
+	private static boolean filesEqual(File file1, File file2,
+		boolean nameSensitive) {
+		if (file1.isDirectory() != file2.isDirectory())
+			return false;
+
+		if (nameSensitive && !file1.getName().equals(file2.getName()))
+			return false;
+
+		if (file1.isDirectory())
+			return directoriesEqual(file1, file2, true);
+
+		byte[] file1Checksum = createChecksum(file1);
+
+		if (file1Checksum == null) {
+			System.err.printf("Error getting %s checksum!", file1.getPath());
+			return false;
+		}
+
+		byte[] file2Checksum = createChecksum(file2);
+		if (file2Checksum == null) {
+			System.err.printf("Error getting %s checksum!", file2.getPath());
+			return false;
+		}
+
+		for (int i = 0; i < file1Checksum.length; i++)
+			if (file1Checksum[i] != file2Checksum[i])
+				return false;
+		return true;
 	}
 
 	/**
@@ -369,73 +1564,1156 @@ public class OFile extends File {
 	}
 
 	/**
-	 * Checks if two non-directory files are equal by matching their checksums.
-	 * Ignores name of file.
-	 * @param  file a non-directory {@link File} to compare with
-	 * @return      true if equal, false otherwise
+	 * Checks if two non-directory files are equal by matching their checksums.
+	 * Ignores name of file.
+	 * @param  file a non-directory {@link File} to compare with
+	 * @return      true if equal, false otherwise
+	 */
+	public boolean equalsIgnoreName(File file) {
+		return equals(file, false);
+	}
+
+	/**
+	 * Checks if two directories are equal (contain equal contents).
+	 *
+	 * @param  d1 a directory to compare
+	 * @param  d2 another directory to compare
+	 * @return    true if exactly equal, false otherwise
+	 */
+	private static boolean directoriesEqual(File d1, File d2,
+		boolean nameSensitive) {
+		File[] d1Files = d1.listFiles();
+		File[] d2Files = d2.listFiles();
+
+		if (d1Files.length != d2Files.length)
+			return false;
+
+		for (int i = 0; i < d1Files.length; i++)
+			if (!filesEqual(d1Files[i], d2Files[i], nameSensitive))
+				return false;
+
+		return true;
+	}
+
+	/**
+	 * Gets this file's checksum if possible
+	 * @return a byte array of the checksum
+	 */
+	public byte[] getChecksum() {
+		return createChecksum(this);
+	}
+
+	/**
+	 * Computes the rolling and strong block checksums of this file so that a
+	 * delta can be created against it with {@link #createDelta}.
+	 * @param  blockSize the size of each block in bytes
+	 * @return           the {@link BlockSignature}, or null on failure or if
+	 *                   blockSize is not positive
+	 */
+	public BlockSignature getSignature(int blockSize) {
+		if (blockSize <= 0)
+			return null;
+		close();
+		MessageDigest strong;
+		try {
+			strong = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+
+		BufferPool pool = bufferPool;
+		ByteBuffer buffer = pool.borrowHeap(blockSize);
+		try (FileChannel channel = new FileInputStream(this).getChannel()) {
+			long fileLength = channel.size();
+			int numBlocks = (int)(fileLength / blockSize);
+			BlockSignature signature = new BlockSignature(blockSize,
+				fileLength, numBlocks);
+			for (int i = 0; i < numBlocks; i++) {
+				buffer.clear().limit(blockSize);
+				readFully(channel, buffer, (long)i * blockSize);
+				signature.weak[i] = rollingChecksum(buffer.array(), 0,
+					blockSize);
+				strong.update(buffer.array(), 0, blockSize);
+				signature.strong[i] = strong.digest();
+			}
+			return signature;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Computes the block checksums of this file with the default block size.
+	 * @return the {@link BlockSignature}, or null on failure
+	 */
+	public BlockSignature getSignature() {
+		return getSignature(DELTA_BLOCK_SIZE);
+	}
+
+	/**
+	 * Creates a delta that turns the file with the given signature into this
+	 * file. Blocks of this file found in the signature (by rolling checksum,
+	 * then confirmed by strong checksum) are referenced rather than stored,
+	 * wherever they are in either file, so inserted or moved data only
+	 * stores the bytes that changed.
+	 * @param  signature the {@link BlockSignature} of the file to update
+	 * @return           the {@link Delta}, or null on failure
+	 */
+	public Delta createDelta(BlockSignature signature) {
+		close();
+		MessageDigest strong;
+		try {
+			strong = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+
+		int blockSize = signature.blockSize;
+		Map<Integer, List<Integer>> blocks =
+			new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < signature.weak.length; i++)
+			blocks.computeIfAbsent(signature.weak[i],
+				k -> new ArrayList<Integer>()).add(i);
+
+		BufferPool pool = bufferPool;
+		ByteBuffer window = pool.borrowHeap(Math.max(2 * blockSize, 1 << 16));
+		try (InputStream is = new FileInputStream(this)) {
+			Delta delta = new Delta(signature, length());
+			ByteArrayOutputStream literal = new ByteArrayOutputStream();
+			byte[] buffer = window.array();
+			int start = 0, end = 0, weak = 0;
+			boolean rolling = false, eof = false;
+			long position = 0;
+
+			while (true) {
+				if (!eof && end - start <= blockSize) {
+					System.arraycopy(buffer, start, buffer, 0, end - start);
+					end -= start;
+					start = 0;
+					while (end < buffer.length) {
+						int numRead = is.read(buffer, end, buffer.length - end);
+						if (numRead == -1) {
+							eof = true;
+							break;
+						}
+						end += numRead;
+					}
+				}
+				if (end - start < blockSize)
+					break;
+
+				if (!rolling) {
+					weak = rollingChecksum(buffer, start, blockSize);
+					rolling = true;
+				}
+
+				int match = -1;
+				List<Integer> candidates = blocks.get(weak);
+				if (candidates != null) {
+					strong.update(buffer, start, blockSize);
+					byte[] digest = strong.digest();
+					for (int index : candidates) {
+						boolean inPlace = (long)index * blockSize == position;
+						if ((match == -1 || inPlace) && MessageDigest.isEqual(
+							digest, signature.strong[index])) {
+							match = index;
+							if (inPlace)
+								break;
+						}
+					}
+				}
+
+				if (match != -1) {
+					delta.addLiteral(literal);
+					delta.addBlock(match);
+					start += blockSize;
+					position += blockSize;
+					rolling = false;
+					continue;
+				}
+
+				byte out = buffer[start];
+				literal.write(out);
+				if (literal.size() >= MAX_LITERAL_SIZE)
+					delta.addLiteral(literal);
+				start++;
+				position++;
+				if (end - start >= blockSize)
+					weak = rollChecksum(weak, out, buffer[start + blockSize - 1],
+						blockSize);
+				else rolling = false;
+			}
+
+			literal.write(buffer, start, end - start);
+			delta.addLiteral(literal);
+			return delta;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			pool.release(window);
+		}
+	}
+
+	/**
+	 * Applies a delta created by {@link #createDelta} to this file in place,
+	 * only writing the blocks that changed. Block copies are ordered so that
+	 * no block is overwritten before every copy reading it has run, and a
+	 * block in a cycle of copies is held in memory until it can be written.
+	 * @param  delta the {@link Delta} to apply
+	 * @return       OFile instance, or null on failure
+	 */
+	public OFile applyDelta(Delta delta) {
+		close();
+		if (length() != delta.baseLength)
+			return null;
+
+		int blockSize = delta.blockSize;
+		int count = 0;
+		for (Delta.Op op : delta.ops)
+			if (op.literal == null)
+				count++;
+		long[] from = new long[count], to = new long[count];
+		long position = 0;
+		count = 0;
+		for (Delta.Op op : delta.ops) {
+			if (op.literal != null) {
+				position += op.literal.length;
+				continue;
+			}
+			from[count] = (long)op.block * blockSize;
+			to[count++] = position;
+			position += blockSize;
+		}
+
+		// A copy must wait for the copies that read the range it overwrites
+		int[] waiting = new int[count];
+		for (int i = 0; i < count; i++)
+			if (from[i] != to[i])
+				for (int j = firstOverlap(to, from[i], blockSize);
+					j < count && to[j] < from[i] + blockSize; j++)
+					if (j != i && from[j] != to[j])
+						waiting[j]++;
+
+		BufferPool pool = bufferPool;
+		ByteBuffer block = pool.borrowHeap(blockSize);
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			int[] ready = new int[count];
+			byte[][] saved = new byte[count][];
+			boolean[] done = new boolean[count];
+			int head = 0, tail = 0, remaining = 0, next = 0;
+			for (int i = 0; i < count; i++)
+				if (from[i] == to[i])
+					done[i] = true;
+				else {
+					remaining++;
+					if (waiting[i] == 0)
+						ready[tail++] = i;
+				}
+
+			while (remaining > 0) {
+				int i;
+				if (head == tail) {
+					while (done[next] || saved[next] != null)
+						next++;
+					i = next;
+					block.clear().limit(blockSize);
+					readFully(channel, block, from[i]);
+					saved[i] = Arrays.copyOf(block.array(), blockSize);
+				} else {
+					i = ready[head++];
+					ByteBuffer source = block;
+					if (saved[i] == null) {
+						block.clear().limit(blockSize);
+						readFully(channel, block, from[i]);
+						block.flip();
+					} else source = ByteBuffer.wrap(saved[i]);
+					while (source.hasRemaining())
+						channel.write(source, to[i] + source.position());
+					done[i] = true;
+					remaining--;
+					if (saved[i] != null) {
+						saved[i] = null;
+						continue;
+					}
+				}
+
+				for (int j = firstOverlap(to, from[i], blockSize);
+					j < count && to[j] < from[i] + blockSize; j++)
+					if (j != i && !done[j] && --waiting[j] == 0)
+						ready[tail++] = j;
+			}
+
+			position = 0;
+			for (Delta.Op op : delta.ops) {
+				if (op.literal == null) {
+					position += blockSize;
+					continue;
+				}
+				ByteBuffer literal = ByteBuffer.wrap(op.literal);
+				while (literal.hasRemaining())
+					channel.write(literal, position + literal.position());
+				position += literal.capacity();
+			}
+			channel.truncate(delta.length);
+			return this;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			pool.release(block);
+		}
+	}
+
+	/**
+	 * Finds the first block copy whose destination range ends after an
+	 * offset.
+	 * @param  to        the sorted destination offsets of the copies
+	 * @param  offset    the offset to search for
+	 * @param  blockSize the size of each block in bytes
+	 * @return           the index of the first such copy
+	 */
+	private static int firstOverlap(long[] to, long offset, int blockSize) {
+		int low = 0, high = to.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (to[mid] + blockSize <= offset)
+				low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Computes the rsync-style rolling checksum of a range of bytes.
+	 * @param  bytes  the bytes to checksum
+	 * @param  offset the start of the range
+	 * @param  length the length of the range
+	 * @return        the rolling checksum
+	 */
+	private static int rollingChecksum(byte[] bytes, int offset, int length) {
+		int a = 0, b = 0;
+		for (int i = 0; i < length; i++) {
+			a += bytes[offset + i] & 0xff;
+			b += (length - i) * (bytes[offset + i] & 0xff);
+		}
+		return (a & 0xffff) | (b << 16);
+	}
+
+	/**
+	 * Rolls a checksum from {@link #rollingChecksum} forward by one byte.
+	 * @param  checksum the checksum of the previous range
+	 * @param  out      the byte leaving the range
+	 * @param  in       the byte entering the range
+	 * @param  length   the length of the range
+	 * @return          the checksum of the next range
+	 */
+	private static int rollChecksum(int checksum, byte out, byte in,
+		int length) {
+		int a = checksum & 0xffff, b = checksum >>> 16;
+		a = (a - (out & 0xff) + (in & 0xff)) & 0xffff;
+		b = (b - length * (out & 0xff) + a) & 0xffff;
+		return a | (b << 16);
+	}
+
+	/**
+	 * Returns the number of lines contained in the file efficiently
+	 * @return number of lines contained in the file
+	 */
+	public int countLines() {
+		close();
+		int size = getBufferSize(false);
+		BufferPool pool = bufferPool;
+		ByteBuffer buffer = pool.borrowHeap(size);
+		try (InputStream is = new FileInputStream(this)) {
+			byte[] c = buffer.array();
+			int count = 0;
+			int readChars = 0;
+			boolean empty = true;
+			while ((readChars = is.read(c, 0, size)) != -1) {
+				empty = false;
+				for (int i = 0; i < readChars; ++i) {
+					if (c[i] == '\n') {
+						++count;
+					}
+				}
+			}
+			return (count == 0 && !empty) ? 1 : count;
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Sorts the lines of this file into an output file, even if the file is
+	 * larger than the heap. Lines are read into runs that fit within the
+	 * memory budget, which are sorted and spilled to temporary files in
+	 * parallel, then merged together.
+	 * @param  output       the file to write the sorted lines to (may be this
+	 *                      file)
+	 * @param  comparator   the order to sort the lines in
+	 * @param  distinct     true to drop lines the comparator considers equal
+	 *                      to the previous line
+	 * @param  memoryBudget the most bytes of lines to hold in memory at once
+	 * @return              the output file, or null on failure
+	 */
+	public OFile sortLines(OFile output, Comparator<? super String> comparator,
+		boolean distinct, long memoryBudget) {
+		close();
+		output.close();
+		int threads = Runtime.getRuntime().availableProcessors();
+		long runSize = Math.max(memoryBudget / (threads + 1), MIN_RUN_SIZE);
+		Path tempDir = output.toPath().toAbsolutePath().getParent();
+		Queue<File> tempFiles = new ConcurrentLinkedQueue<File>();
+		ExecutorService executor = newExecutor(threads, "OFile-sorter");
+		Semaphore permits = new Semaphore(threads);
+		List<Future<File>> runs = new ArrayList<Future<File>>();
+
+		try {
+			List<String> chunk = new ArrayList<String>();
+			try (BufferedReader reader = new BufferedReader(
+				new FileReader(this), getBufferSize(false))) {
+				long chunkSize = 0;
+				String line;
+				while ((line = reader.readLine()) != null) {
+					chunk.add(line);
+					chunkSize += 2L * line.length() + LINE_OVERHEAD;
+					if (chunkSize >= runSize) {
+						runs.add(submitRun(executor, permits, chunk, comparator,
+							distinct, tempDir, tempFiles));
+						chunk = new ArrayList<String>();
+						chunkSize = 0;
+					}
+				}
+			}
+
+			if (runs.isEmpty()) {
+				chunk.sort(comparator);
+				try (BufferedWriter writer = new BufferedWriter(
+					new FileWriter(output), output.getBufferSize(true))) {
+					writeLines(chunk, writer, comparator, distinct);
+				}
+				return output;
+			}
+			if (!chunk.isEmpty())
+				runs.add(submitRun(executor, permits, chunk, comparator,
+					distinct, tempDir, tempFiles));
+			chunk = null;
+
+			List<File> runFiles = new ArrayList<File>();
+			for (Future<File> run : runs)
+				runFiles.add(run.get());
+			while (runFiles.size() > MAX_MERGE_RUNS) {
+				List<File> merged = new ArrayList<File>();
+				for (int i = 0; i < runFiles.size(); i += MAX_MERGE_RUNS) {
+					File mergedRun = createTempRun(tempDir, tempFiles);
+					try (BufferedWriter writer = new BufferedWriter(
+						new FileWriter(mergedRun), IO_BUFFER_SIZE)) {
+						mergeRuns(runFiles.subList(i, Math.min(runFiles.size(),
+							i + MAX_MERGE_RUNS)), writer, comparator, distinct,
+							memoryBudget);
+					}
+					merged.add(mergedRun);
+				}
+				runFiles = merged;
+			}
+			try (BufferedWriter writer = new BufferedWriter(
+				new FileWriter(output), output.getBufferSize(true))) {
+				mergeRuns(runFiles, writer, comparator, distinct, memoryBudget);
+			}
+			return output;
+		} catch (IOException | ExecutionException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} finally {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (File tempFile : tempFiles)
+				tempFile.delete();
+		}
+	}
+
+	/**
+	 * Sorts the lines of this file into an output file using at most a
+	 * quarter of the maximum heap size for lines.
+	 * @param  output     the file to write the sorted lines to
+	 * @param  comparator the order to sort the lines in
+	 * @param  distinct   true to drop lines the comparator considers equal
+	 *                    to the previous line
+	 * @return            the output file, or null on failure
+	 */
+	public OFile sortLines(OFile output, Comparator<? super String> comparator,
+		boolean distinct) {
+		return sortLines(output, comparator, distinct,
+			Runtime.getRuntime().maxMemory() / 4);
+	}
+
+	/**
+	 * Sorts the lines of this file into an output file, keeping duplicates.
+	 * @param  output     the file to write the sorted lines to
+	 * @param  comparator the order to sort the lines in
+	 * @return            the output file, or null on failure
+	 */
+	public OFile sortLines(OFile output, Comparator<? super String> comparator) {
+		return sortLines(output, comparator, false);
+	}
+
+	/**
+	 * Sorts the lines of this file lexicographically into an output file.
+	 * @param  output the file to write the sorted lines to
+	 * @return        the output file, or null on failure
+	 */
+	public OFile sortLines(OFile output) {
+		return sortLines(output, Comparator.naturalOrder());
+	}
+
+	/**
+	 * Gets a comparator that orders lines by the number they start with.
+	 * Lines that do not start with a number are ordered last.
+	 * @return the {@link Comparator}
+	 */
+	public static Comparator<String> numericOrder() {
+		return Comparator.comparingDouble(OFile::leadingNumber);
+	}
+
+	/**
+	 * Gets a comparator that orders lines by a key extracted from each line.
+	 * @param  keyExtractor the function that extracts the key from a line
+	 * @param  <K>          the type of the key
+	 * @return              the {@link Comparator}
+	 */
+	public static <K extends Comparable<? super K>> Comparator<String> byKey(
+		Function<String, ? extends K> keyExtractor) {
+		return Comparator.comparing(keyExtractor);
+	}
+
+	/**
+	 * Parses the number at the start of a line, up to the first whitespace.
+	 * @param  line the line to parse
+	 * @return      the number, or NaN if the line does not start with one
+	 */
+	private static double leadingNumber(String line) {
+		String trimmed = line.trim();
+		int end = 0;
+		while (end < trimmed.length() &&
+			!Character.isWhitespace(trimmed.charAt(end)))
+			end++;
+		try {
+			return Double.parseDouble(trimmed.substring(0, end));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Sorts and spills a run of lines to a temporary file on an executor,
+	 * first waiting for a permit so that only a bounded number of runs are
+	 * held in memory at once.
+	 * @param  executor             the {@link ExecutorService} to sort on
+	 * @param  permits              the {@link Semaphore} bounding the runs
+	 * @param  lines                the lines to sort
+	 * @param  comparator           the order to sort the lines in
+	 * @param  distinct             true to drop equal lines
+	 * @param  tempDir              the directory to create the run in
+	 * @param  tempFiles            the temporary files to delete afterwards
+	 * @return                      the {@link Future} run file
+	 * @throws InterruptedException if interrupted waiting for a permit
+	 */
+	private static Future<File> submitRun(ExecutorService executor,
+		Semaphore permits, List<String> lines,
+		Comparator<? super String> comparator, boolean distinct,
+		Path tempDir, Queue<File> tempFiles) throws InterruptedException {
+		permits.acquire();
+		return executor.submit(() -> {
+			try {
+				lines.sort(comparator);
+				File run = createTempRun(tempDir, tempFiles);
+				try (BufferedWriter writer = new BufferedWriter(
+					new FileWriter(run), IO_BUFFER_SIZE)) {
+					writeLines(lines, writer, comparator, distinct);
+				}
+				return run;
+			} finally {
+				permits.release();
+			}
+		});
+	}
+
+	/**
+	 * Creates a temporary file for a sorted run.
+	 * @param  tempDir     the directory to create the file in
+	 * @param  tempFiles   the temporary files to delete afterwards
+	 * @return             the temporary {@link File}
+	 * @throws IOException if the file cannot be created
+	 */
+	private static File createTempRun(Path tempDir, Queue<File> tempFiles)
+		throws IOException {
+		File run = Files.createTempFile(tempDir, ".sort", ".run").toFile();
+		tempFiles.add(run);
+		return run;
+	}
+
+	/**
+	 * Writes sorted lines, each followed by a newline.
+	 * @param  lines       the sorted lines
+	 * @param  writer      the {@link BufferedWriter} to write to
+	 * @param  comparator  the order the lines are sorted in
+	 * @param  distinct    true to drop lines equal to the previous line
+	 * @throws IOException if writing fails
+	 */
+	private static void writeLines(List<String> lines, BufferedWriter writer,
+		Comparator<? super String> comparator, boolean distinct)
+		throws IOException {
+		String previous = null;
+		for (String line : lines) {
+			if (distinct && previous != null &&
+				comparator.compare(previous, line) == 0)
+				continue;
+			writer.write(line);
+			writer.write('\n');
+			previous = line;
+		}
+	}
+
+	/**
+	 * Merges sorted run files with a heap over their next lines.
+	 * @param  runs         the sorted run files
+	 * @param  writer       the {@link BufferedWriter} to write to
+	 * @param  comparator   the order the lines are sorted in
+	 * @param  distinct     true to drop lines equal to the previous line
+	 * @param  memoryBudget the most bytes to use for the run readers' buffers
+	 * @throws IOException  if reading or writing fails
+	 */
+	private static void mergeRuns(List<File> runs, BufferedWriter writer,
+		Comparator<? super String> comparator, boolean distinct,
+		long memoryBudget) throws IOException {
+		int bufferSize = (int)Math.max(IO_BUFFER_SIZE, Math.min(
+			MAX_BUFFER_SIZE, memoryBudget / (2L * runs.size())));
+		PriorityQueue<RunReader> heap = new PriorityQueue<RunReader>(
+			runs.size(), (a, b) -> {
+				int compare = comparator.compare(a.line, b.line);
+				return compare != 0 ? compare:Integer.compare(a.index, b.index);
+			});
+		List<BufferedReader> readers = new ArrayList<BufferedReader>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				BufferedReader reader = new BufferedReader(
+					new FileReader(runs.get(i)), bufferSize);
+				readers.add(reader);
+				RunReader run = new RunReader(reader, i);
+				if (run.advance())
+					heap.add(run);
+			}
+
+			String previous = null;
+			while (!heap.isEmpty()) {
+				RunReader run = heap.poll();
+				if (!distinct || previous == null ||
+					comparator.compare(previous, run.line) != 0) {
+					writer.write(run.line);
+					writer.write('\n');
+					previous = run.line;
+				}
+				if (run.advance())
+					heap.add(run);
+			}
+		} finally {
+			for (BufferedReader reader : readers)
+				reader.close();
+		}
+	}
+
+	/**
+	 * Finds the lines of this file that contain a literal string. The file is
+	 * memory mapped in newline-aligned ranges that are searched in parallel
+	 * with the Boyer-Moore-Horspool algorithm over the raw bytes, and only
+	 * matching lines are decoded.
+	 * @param  literal the string to search for
+	 * @return         the matching lines in order, or null on failure
+	 */
+	public List<GrepMatch> grep(String literal) {
+		if (literal.isEmpty())
+			return grep(Pattern.compile(""));
+		if (literal.indexOf('\n') != -1)
+			return new ArrayList<GrepMatch>();
+		byte[] needle = literal.getBytes();
+		int[] shift = new int[256];
+		Arrays.fill(shift, needle.length);
+		for (int i = 0; i < needle.length - 1; i++)
+			shift[needle[i] & 0xff] = needle.length - 1 - i;
+		return grep((buffer, base, matches) -> {
+			int position = 0, lineStart = 0, scanned = 0;
+			long newlines = 0;
+			int match;
+			while ((match = indexOf(buffer, position, buffer.limit(), needle,
+				shift)) != -1) {
+				for (; scanned < match; scanned++)
+					if (buffer.get(scanned) == '\n') {
+						newlines++;
+						lineStart = scanned + 1;
+					}
+				int lineEnd = nextNewline(buffer, match + needle.length);
+				matches.add(new GrepMatch(newlines, base + lineStart,
+					base + match, decodeLine(buffer, lineStart, lineEnd)));
+				position = lineEnd + 1;
+			}
+			for (; scanned < buffer.limit(); scanned++)
+				if (buffer.get(scanned) == '\n')
+					newlines++;
+			return newlines;
+		});
+	}
+
+	/**
+	 * Finds the lines of this file that match a regular expression. The file
+	 * is memory mapped in newline-aligned ranges that are searched in
+	 * parallel, decoding each line to match it.
+	 * @param  pattern the {@link Pattern} to search for
+	 * @return         the matching lines in order, or null on failure
+	 */
+	public List<GrepMatch> grep(Pattern pattern) {
+		return grep((buffer, base, matches) -> {
+			long newlines = 0;
+			int lineStart = 0;
+			while (lineStart < buffer.limit()) {
+				int lineEnd = nextNewline(buffer, lineStart);
+				String line = decodeLine(buffer, lineStart, lineEnd);
+				Matcher matcher = pattern.matcher(line);
+				if (matcher.find())
+					matches.add(new GrepMatch(newlines, base + lineStart,
+						base + lineStart + line.substring(0, matcher.start())
+						.getBytes().length, line));
+				if (lineEnd < buffer.limit())
+					newlines++;
+				lineStart = lineEnd + 1;
+			}
+			return newlines;
+		});
+	}
+
+	/**
+	 * Splits this file into newline-aligned ranges, maps and searches them in
+	 * parallel, then numbers the matching lines.
+	 * @param  searcher the {@link RangeSearcher} to search each range with
+	 * @return          the matching lines in order, or null on failure
+	 */
+	private List<GrepMatch> grep(RangeSearcher searcher) {
+		close();
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ)) {
+			int threads = Runtime.getRuntime().availableProcessors();
+			long[] bounds = lineAlignedBounds(channel, Math.max(GREP_RANGE_SIZE,
+				channel.size() / (4 * threads)), Integer.MAX_VALUE);
+			int numRanges = bounds.length - 1;
+			List<List<GrepMatch>> rangeMatches =
+				new ArrayList<List<GrepMatch>>();
+			long[] rangeNewlines = new long[numRanges];
+			for (int i = 0; i < numRanges; i++)
+				rangeMatches.add(new ArrayList<GrepMatch>());
+
+			IntStream.range(0, numRanges).parallel().forEach(i -> {
+				try {
+					ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+						bounds[i], bounds[i + 1] - bounds[i]);
+					rangeNewlines[i] = searcher.search(buffer, bounds[i],
+						rangeMatches.get(i));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+
+			List<GrepMatch> matches = new ArrayList<GrepMatch>();
+			long lineNumber = 1;
+			for (int i = 0; i < numRanges; i++) {
+				for (GrepMatch match : rangeMatches.get(i))
+					matches.add(new GrepMatch(lineNumber + match.lineNumber,
+						match.lineOffset, match.offset, match.line));
+				lineNumber += rangeNewlines[i];
+			}
+			return matches;
+		} catch (IOException | UncheckedIOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Splits this file into parts of roughly the given size, each ending at
+	 * the end of a line, written in parallel without being decoded. The
+	 * parts are named after this file with a ".part" suffix and number, and
+	 * parts left over from an earlier split into more parts are deleted.
+	 * @param  bytesPerPart the target size of each part in bytes
+	 * @return              the parts in order, or null on failure or if
+	 *                      bytesPerPart is not positive
+	 */
+	public OFile[] split(long bytesPerPart) {
+		if (bytesPerPart <= 0)
+			return null;
+		close();
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ)) {
+			return writeParts(channel, lineAlignedBounds(channel, bytesPerPart,
+				Long.MAX_VALUE));
+		} catch (IOException | UncheckedIOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Splits this file into parts with the given number of lines, written
+	 * in parallel without being decoded. The parts are named after this file
+	 * with a ".part" suffix and number, and parts left over from an earlier
+	 * split into more parts are deleted.
+	 * @param  linesPerPart the number of lines in each part
+	 * @return              the parts in order, or null on failure or if
+	 *                      linesPerPart is not positive
+	 */
+	public OFile[] splitByLines(long linesPerPart) {
+		if (linesPerPart <= 0)
+			return null;
+		close();
+		BufferPool pool = bufferPool;
+		int size = getBufferSize(false);
+		ByteBuffer buffer = pool.borrowHeap(size);
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ)) {
+			List<Long> bounds = new ArrayList<Long>();
+			bounds.add(0L);
+			long position = 0, lines = 0, fileSize = channel.size();
+			while (position < fileSize) {
+				buffer.clear().limit(size);
+				int numRead = readFully(channel, buffer, position);
+				byte[] bytes = buffer.array();
+				for (int i = 0; i < numRead; i++)
+					if (bytes[i] == '\n' && ++lines % linesPerPart == 0 &&
+						position + i + 1 < fileSize)
+						bounds.add(position + i + 1);
+				position += numRead;
+			}
+			if (fileSize > 0)
+				bounds.add(fileSize);
+
+			long[] result = new long[bounds.size()];
+			for (int i = 0; i < result.length; i++)
+				result[i] = bounds.get(i);
+			return writeParts(channel, result);
+		} catch (IOException | UncheckedIOException e) {
+			return null;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Writes ranges of a file to part files in parallel with
+	 * {@link FileChannel#transferTo}, then deletes any higher numbered parts
+	 * left over from an earlier split. If any part fails, the parts written
+	 * so far are deleted.
+	 * @param  channel the {@link FileChannel} of this file
+	 * @param  bounds  the offsets of the start of each part, followed by the
+	 *                 size of the file
+	 * @return         the parts in order
+	 */
+	private OFile[] writeParts(FileChannel channel, long[] bounds) {
+		OFile[] parts = new OFile[bounds.length - 1];
+		try {
+			IntStream.range(0, parts.length).parallel().forEach(i -> {
+				parts[i] = new OFile(getPath() + ".part" + i);
+				try (FileChannel part = FileChannel.open(parts[i].toPath(),
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+					transferFully(channel, bounds[i], bounds[i + 1] - bounds[i],
+						part);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (RuntimeException e) {
+			for (OFile part : parts)
+				if (part != null)
+					part.delete();
+			throw e;
+		}
+		for (int i = parts.length; ; i++) {
+			File stale = new File(getPath() + ".part" + i);
+			if (!stale.isFile() || !stale.delete())
+				break;
+		}
+		return parts;
+	}
+
+	/**
+	 * Replaces the contents of this file with the concatenation of other
+	 * files, moving the data between channels with
+	 * {@link FileChannel#transferTo} so it is not copied through the heap.
+	 * @param  parts the files to concatenate, not including this file
+	 * @return       OFile instance, or null on failure or if this file is
+	 *               one of the parts
+	 */
+	public OFile concat(OFile... parts) {
+		close();
+		try {
+			for (OFile part : parts)
+				if (exists() && Files.isSameFile(part.toPath(), toPath()))
+					return null;
+		} catch (IOException e) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (OFile part : parts) {
+				part.close();
+				try (FileChannel partChannel = FileChannel.open(part.toPath(),
+					StandardOpenOption.READ)) {
+					transferFully(partChannel, 0, partChannel.size(), channel);
+				}
+			}
+			return this;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Transfers a range of the file to a channel without decoding it. File,
+	 * socket and pipe channels are written with {@link FileChannel#transferTo}
+	 * so the contents never enter the heap, and other channels are written
+	 * through a pooled direct buffer. If the target is a non-blocking channel
+	 * that stops accepting bytes, the transfer stops and returns the number of
+	 * bytes transferred so far, so the caller can continue from
+	 * {@code offset} plus that number once the channel is writable again.
+	 * @param  target the channel to write to
+	 * @param  offset the offset of the range in the file
+	 * @param  length the most bytes to transfer
+	 * @return        the number of bytes transferred, or -1 on failure or if
+	 *                offset is negative
+	 */
+	public long transferTo(WritableByteChannel target, long offset,
+		long length) {
+		if (offset < 0)
+			return -1;
+		close();
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ)) {
+			long count = Math.max(0, Math.min(length, channel.size() - offset));
+			long transferred = 0;
+			if (target instanceof FileChannel ||
+				target instanceof SelectableChannel) {
+				while (transferred < count) {
+					long numWritten = channel.transferTo(offset + transferred,
+						count - transferred, target);
+					if (numWritten <= 0)
+						break;
+					transferred += numWritten;
+				}
+				return transferred;
+			}
+
+			BufferPool pool = bufferPool;
+			ByteBuffer buffer = pool.borrowDirect(DIRECT_BUFFER_SIZE);
+			try {
+				while (transferred < count) {
+					buffer.clear().limit((int)Math.min(buffer.capacity(),
+						count - transferred));
+					if (readFully(channel, buffer, offset + transferred) == 0)
+						break;
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						int numWritten = target.write(buffer);
+						if (numWritten <= 0)
+							return transferred;
+						transferred += numWritten;
+					}
+				}
+				return transferred;
+			} finally {
+				pool.release(buffer);
+			}
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Transfers the whole file to a channel without decoding it.
+	 * @param  target the channel to write to
+	 * @return        the number of bytes transferred, or -1 on failure
+	 */
+	public long transferTo(WritableByteChannel target) {
+		return transferTo(target, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Transfers a range of the file to a stream without decoding it. File
+	 * streams are written with {@link FileChannel#transferTo}, and other
+	 * streams are written through a pooled buffer.
+	 * @param  out    the {@link OutputStream} to write to
+	 * @param  offset the offset of the range in the file
+	 * @param  length the most bytes to transfer
+	 * @return        the number of bytes transferred, or -1 on failure or if
+	 *                offset is negative
+	 */
+	public long transferTo(OutputStream out, long offset, long length) {
+		if (offset < 0)
+			return -1;
+		if (out instanceof FileOutputStream)
+			return transferTo(((FileOutputStream)out).getChannel(), offset,
+				length);
+		close();
+		BufferPool pool = bufferPool;
+		ByteBuffer buffer = pool.borrowHeap(DIRECT_BUFFER_SIZE);
+		try (FileChannel channel = FileChannel.open(toPath(),
+			StandardOpenOption.READ)) {
+			long count = Math.max(0, Math.min(length, channel.size() - offset));
+			for (long position = offset; position < offset + count;) {
+				buffer.clear().limit((int)Math.min(buffer.capacity(),
+					offset + count - position));
+				int numRead = readFully(channel, buffer, position);
+				if (numRead == 0)
+					throw new IOException("Unexpected end of file");
+				out.write(buffer.array(), 0, numRead);
+				position += numRead;
+			}
+			return count;
+		} catch (IOException e) {
+			return -1;
+		} finally {
+			pool.release(buffer);
+		}
+	}
+
+	/**
+	 * Transfers the whole file to a stream without decoding it.
+	 * @param  out the {@link OutputStream} to write to
+	 * @return     the number of bytes transferred, or -1 on failure
+	 */
+	public long transferTo(OutputStream out) {
+		return transferTo(out, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Transfers a range of a file to a channel, looping until the whole range
+	 * is transferred.
+	 * @param  source      the {@link FileChannel} to transfer from
+	 * @param  position    the offset of the range
+	 * @param  count       the length of the range
+	 * @param  target      the channel to transfer to
+	 * @throws IOException if transferring fails
+	 */
+	private static void transferFully(FileChannel source, long position,
+		long count, WritableByteChannel target) throws IOException {
+		while (count > 0) {
+			long transferred = source.transferTo(position, count, target);
+			if (transferred <= 0)
+				throw new IOException("Transfer made no progress");
+			position += transferred;
+			count -= transferred;
+		}
+	}
+
+	/**
+	 * Finds the boundaries of consecutive ranges of a file of roughly the
+	 * given size, each ending just after a newline (or at the end of the
+	 * file).
+	 * @param  channel     the {@link FileChannel} to split
+	 * @param  rangeSize   the target size of each range in bytes
+	 * @param  maxSize     the largest allowed size of a range in bytes
+	 * @return             the offsets of the start of each range, followed by
+	 *                     the size of the file
+	 * @throws IOException if reading fails or a line is longer than maxSize
 	 */
-	public boolean equalsIgnoreName(File file) {
-		return equals(file, false);
+	private static long[] lineAlignedBounds(FileChannel channel, long rangeSize,
+		long maxSize) throws IOException {
+		long size = channel.size();
+		rangeSize = Math.max(1, Math.min(rangeSize, maxSize));
+		List<Long> bounds = new ArrayList<Long>();
+		ByteBuffer buffer = ByteBuffer.allocate(MIN_BUFFER_SIZE);
+		long start = 0;
+		bounds.add(start);
+		while (start < size) {
+			long end = start + rangeSize;
+			if (end >= size)
+				end = size;
+			else {
+				long newline = -1;
+				while (newline == -1 && end < size) {
+					buffer.clear();
+					int numRead = readFully(channel, buffer, end);
+					for (int i = 0; i < numRead && newline == -1; i++)
+						if (buffer.get(i) == '\n')
+							newline = end + i;
+					if (newline == -1)
+						end += numRead;
+				}
+				end = newline == -1 ? size:newline + 1;
+			}
+			if (end - start > maxSize)
+				throw new IOException("Line too long to split at " + start);
+			bounds.add(end);
+			start = end;
+		}
+		long[] result = new long[bounds.size()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = bounds.get(i);
+		return result;
 	}
 
 	/**
-	 * Checks if two directories are equal (contain equal contents).
-	 *
-	 * @param  d1 a directory to compare
-	 * @param  d2 another directory to compare
-	 * @return    true if exactly equal, false otherwise
+	 * Finds a byte sequence in a buffer with the Boyer-Moore-Horspool
+	 * algorithm.
+	 * @param  buffer the buffer to search
+	 * @param  from   the first index to search from
+	 * @param  to     the index to search up to (exclusive)
+	 * @param  needle the non-empty bytes to search for
+	 * @param  shift  the bad character shift table for the needle
+	 * @return        the index of the first match, or -1 if none
 	 */
-	private static boolean directoriesEqual(File d1, File d2,
-		boolean nameSensitive) {
-		File[] d1Files = d1.listFiles();
-		File[] d2Files = d2.listFiles();
-
-		if (d1Files.length != d2Files.length)
-			return false;
-
-		for (int i = 0; i < d1Files.length; i++)
-			if (!filesEqual(d1Files[i], d2Files[i], nameSensitive))
-				return false;
-
-		return true;
+	private static int indexOf(ByteBuffer buffer, int from, int to,
+		byte[] needle, int[] shift) {
+		int last = needle.length - 1;
+		for (int i = from; i + last < to;
+			i += shift[buffer.get(i + last) & 0xff])
+			for (int j = last; buffer.get(i + j) == needle[j]; j--)
+				if (j == 0)
+					return i;
+		return -1;
 	}
 
 	/**
-	 * Gets this file's checksum if possible
-	 * @return a byte array of the checksum
+	 * Finds the next newline in a buffer.
+	 * @param  buffer the buffer to search
+	 * @param  from   the first index to search from
+	 * @return        the index of the newline, or the buffer's limit if none
 	 */
-	public byte[] getChecksum() {
-		return createChecksum(this);
+	private static int nextNewline(ByteBuffer buffer, int from) {
+		int limit = buffer.limit();
+		while (from < limit && buffer.get(from) != '\n')
+			from++;
+		return from;
 	}
 
 	/**
-	 * Returns the number of lines contained in the file efficiently
-	 * @return number of lines contained in the file
+	 * Decodes a line from a buffer, dropping a trailing carriage return.
+	 * @param  buffer the buffer holding the line
+	 * @param  start  the index of the start of the line
+	 * @param  end    the index of the end of the line (exclusive)
+	 * @return        the decoded line
 	 */
-	public int countLines() {
-		close();
-		try {
-			InputStream is = new BufferedInputStream(new FileInputStream(this));
-			try {
-				byte[] c = new byte[1024];
-				int count = 0;
-				int readChars = 0;
-				boolean empty = true;
-				while ((readChars = is.read(c)) != -1) {
-					empty = false;
-					for (int i = 0; i < readChars; ++i) {
-						if (c[i] == '\n') {
-							++count;
-						}
-					}
-				}
-				return (count == 0 && !empty) ? 1 : count;
-			} finally {
-				is.close();
-			}
-		} catch (IOException e) {
-			return -1;
-		}
+	private static String decodeLine(ByteBuffer buffer, int start, int end) {
+		if (end > start && buffer.get(end - 1) == '\r')
+			end--;
+		byte[] bytes = new byte[end - start];
+		buffer.get(start, bytes);
+		return new String(bytes);
 	}
 
 	/**
@@ -445,14 +2723,6 @@ public class OFile extends File {
 	 * @throws Exception Pokemon error handling.
 	 */
 	private static byte[] createChecksum(File file) {
-		InputStream fis;
-		try {
-			fis =  new FileInputStream(file);
-		} catch (FileNotFoundException e) {
-			return null;
-		}
-
-		byte[] buffer = new byte[1024];
 		MessageDigest complete;
 		try {
 			complete = MessageDigest.getInstance("MD5");
@@ -461,21 +2731,176 @@ public class OFile extends File {
 		}
 		int numRead;
 
-		try {
+		int size = getBufferSize(file);
+		BufferPool pool = bufferPool;
+		ByteBuffer pooled = pool.borrowHeap(size);
+		try (InputStream fis = new FileInputStream(file)) {
+			byte[] buffer = pooled.array();
 			do {
-				numRead = fis.read(buffer);
+				numRead = fis.read(buffer, 0, size);
 				if (numRead > 0) {
 					complete.update(buffer, 0, numRead);
 				}
 			} while (numRead != -1);
-			fis.close();
 		} catch (IOException e) {
 			return null;
+		} finally {
+			pool.release(pooled);
+		}
+
+		return complete.digest();
+	}
+
+	/**
+	 * Finds all sets of files with identical contents under a directory.
+	 * Files are first grouped by size, then by a checksum of their first and
+	 * last blocks, and only the remaining candidates are fully checksummed
+	 * (in parallel), so most files are never read in full.
+	 * @param  root the directory (or file) to search
+	 * @return      a list of sets of files with equal contents
+	 */
+	public static List<Set<OFile>> findDuplicates(OFile root) {
+		List<OFile> files = new ArrayList<OFile>();
+		listFilesRecursively(root, files);
+
+		Map<Long, List<OFile>> sizeGroups = new HashMap<Long, List<OFile>>();
+		for (OFile file : files)
+			sizeGroups.computeIfAbsent(file.length(),
+				k -> new ArrayList<OFile>()).add(file);
+
+		List<Set<OFile>> duplicates = new ArrayList<Set<OFile>>();
+		for (Map.Entry<Long, List<OFile>> sizeGroup : sizeGroups.entrySet()) {
+			List<OFile> group = sizeGroup.getValue();
+			if (group.size() < 2)
+				continue;
+			long size = sizeGroup.getKey();
+			if (size == 0) {
+				duplicates.add(new LinkedHashSet<OFile>(group));
+				continue;
+			}
+			for (List<OFile> partialGroup : groupByChecksum(group, true))
+				if (size <= 2L * DUPLICATE_BLOCK_SIZE)
+					duplicates.add(new LinkedHashSet<OFile>(partialGroup));
+				else for (List<OFile> fullGroup :
+					groupByChecksum(partialGroup, false))
+					duplicates.add(new LinkedHashSet<OFile>(fullGroup));
+		}
+		return duplicates;
+	}
+
+	/**
+	 * Groups files by either their partial or full checksums in parallel,
+	 * dropping unreadable files and groups with a single file.
+	 * @param  files   the files to group
+	 * @param  partial true to only checksum the first and last blocks
+	 * @return         the groups of files with matching checksums
+	 */
+	private static List<List<OFile>> groupByChecksum(List<OFile> files,
+		boolean partial) {
+		List<byte[]> checksums = files.parallelStream()
+			.map(file -> partial ? createPartialChecksum(file) :
+				createChecksum(file))
+			.collect(Collectors.toList());
+
+		Map<ByteBuffer, List<OFile>> groups =
+			new HashMap<ByteBuffer, List<OFile>>();
+		for (int i = 0; i < files.size(); i++)
+			if (checksums.get(i) != null)
+				groups.computeIfAbsent(ByteBuffer.wrap(checksums.get(i)),
+					k -> new ArrayList<OFile>()).add(files.get(i));
+
+		List<List<OFile>> result = new ArrayList<List<OFile>>();
+		for (List<OFile> group : groups.values())
+			if (group.size() > 1)
+				result.add(group);
+		return result;
+	}
+
+	/**
+	 * Creates a checksum of only the first and last blocks of a file.
+	 * @param  file the {@link File} to create the checksum for
+	 * @return      a byte checksum array, or null on failure
+	 */
+	private static byte[] createPartialChecksum(File file) {
+		MessageDigest complete;
+		try {
+			complete = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+
+		BufferPool pool = bufferPool;
+		ByteBuffer buffer = pool.borrowHeap(DUPLICATE_BLOCK_SIZE);
+		buffer.limit(DUPLICATE_BLOCK_SIZE);
+		try (FileChannel channel = new FileInputStream(file).getChannel()) {
+			long size = channel.size();
+			readFully(channel, buffer, 0);
+			buffer.flip();
+			complete.update(buffer);
+			if (size > DUPLICATE_BLOCK_SIZE) {
+				buffer.clear().limit(DUPLICATE_BLOCK_SIZE);
+				readFully(channel, buffer, Math.max(DUPLICATE_BLOCK_SIZE,
+					size - DUPLICATE_BLOCK_SIZE));
+				buffer.flip();
+				complete.update(buffer);
+			}
+		} catch (IOException e) {
+			return null;
+		} finally {
+			pool.release(buffer);
 		}
 
 		return complete.digest();
 	}
 
+	/**
+	 * Reads from a channel at a position until the buffer is full or the end
+	 * of the channel is reached.
+	 * @param  channel     the {@link FileChannel} to read from
+	 * @param  buffer      the buffer to fill
+	 * @param  position    the file position to start reading at
+	 * @return             the number of bytes read
+	 * @throws IOException if reading fails
+	 */
+	private static int readFully(FileChannel channel, ByteBuffer buffer,
+		long position) throws IOException {
+		int total = 0, numRead;
+		while (buffer.hasRemaining() &&
+			(numRead = channel.read(buffer, position + total)) != -1)
+			total += numRead;
+		return total;
+	}
+
+	/**
+	 * Recursively collects all regular files under a file without following
+	 * symbolic links, listing hard links to the same file only once.
+	 * Unreadable directories are skipped.
+	 * @param file  the file or directory to start from
+	 * @param files the list to add the files to
+	 */
+	private static void listFilesRecursively(OFile file, List<OFile> files) {
+		Set<Object> fileKeys = new HashSet<Object>();
+		try {
+			Files.walkFileTree(file.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path path,
+					BasicFileAttributes attributes) {
+					Object key = attributes.fileKey();
+					if (attributes.isRegularFile() &&
+						(key == null || fileKeys.add(key)))
+						files.add(new OFile(path.toFile()));
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path path,
+					IOException e) {
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {}
+	}
+
 	/**
 	 * Returns true if a file at that path exists, false otherwise.
 	 * @param  path The path to the file.
@@ -600,4 +3025,607 @@ public class OFile extends File {
 			ofiles[i] = convertFile(files[i]);
 		return ofiles;
 	}
+
+	/**
+	 * Summary of the changes made by {@link #syncTo}.
+	 */
+	public static class SyncSummary {
+
+		private final AtomicLong copied = new AtomicLong();
+		private final AtomicLong unchanged = new AtomicLong();
+		private final AtomicLong deleted = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong bytesCopied = new AtomicLong();
+
+		/**
+		 * Gets the number of new or changed files that were copied.
+		 * @return the number of copied files
+		 */
+		public long getCopied() {
+			return copied.get();
+		}
+
+		/**
+		 * Gets the number of files that were already up to date.
+		 * @return the number of unchanged files
+		 */
+		public long getUnchanged() {
+			return unchanged.get();
+		}
+
+		/**
+		 * Gets the number of extra destination files or directories deleted.
+		 * @return the number of deleted files
+		 */
+		public long getDeleted() {
+			return deleted.get();
+		}
+
+		/**
+		 * Gets the number of files that could not be synced.
+		 * @return the number of failures
+		 */
+		public long getFailed() {
+			return failed.get();
+		}
+
+		/**
+		 * Gets the total number of bytes copied.
+		 * @return the number of bytes copied
+		 */
+		public long getBytesCopied() {
+			return bytesCopied.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"%d copied (%d bytes), %d unchanged, %d deleted, %d failed",
+				getCopied(), getBytesCopied(), getUnchanged(), getDeleted(),
+				getFailed());
+		}
+	}
+
+	/**
+	 * Rolling and strong checksums of each block of a file, created by
+	 * {@link #getSignature}.
+	 */
+	public static class BlockSignature {
+
+		private final int blockSize;
+		private final long fileLength;
+		private final int[] weak;
+		private final byte[][] strong;
+
+		private BlockSignature(int blockSize, long fileLength, int numBlocks) {
+			this.blockSize = blockSize;
+			this.fileLength = fileLength;
+			weak = new int[numBlocks];
+			strong = new byte[numBlocks][];
+		}
+
+		/**
+		 * Gets the size of each block in bytes.
+		 * @return the block size
+		 */
+		public int getBlockSize() {
+			return blockSize;
+		}
+
+		/**
+		 * Gets the length of the file the signature was created from.
+		 * @return the file length in bytes
+		 */
+		public long getFileLength() {
+			return fileLength;
+		}
+	}
+
+	/**
+	 * A list of literal byte runs and references to existing blocks that
+	 * rebuild a file, created by {@link #createDelta}.
+	 */
+	public static class Delta {
+
+		private final int blockSize;
+		private final long baseLength;
+		private final long length;
+		private final List<Op> ops = new ArrayList<Op>();
+		private long literalBytes;
+
+		private Delta(BlockSignature signature, long length) {
+			blockSize = signature.blockSize;
+			baseLength = signature.fileLength;
+			this.length = length;
+		}
+
+		/**
+		 * Adds the pending literal bytes, if any, and resets them.
+		 * @param literal the pending literal bytes
+		 */
+		private void addLiteral(ByteArrayOutputStream literal) {
+			if (literal.size() == 0)
+				return;
+			ops.add(new Op(literal.toByteArray(), -1));
+			literalBytes += literal.size();
+			literal.reset();
+		}
+
+		/**
+		 * Adds a reference to an existing block.
+		 * @param index the index of the block
+		 */
+		private void addBlock(int index) {
+			ops.add(new Op(null, index));
+		}
+
+		/**
+		 * Gets the length of the file after the delta is applied.
+		 * @return the resulting file length in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		/**
+		 * Gets the number of literal bytes stored in the delta.
+		 * @return the number of literal bytes
+		 */
+		public long getLiteralBytes() {
+			return literalBytes;
+		}
+
+		/**
+		 * Gets the number of bytes reused from existing blocks.
+		 * @return the number of matched bytes
+		 */
+		public long getMatchedBytes() {
+			return length - literalBytes;
+		}
+
+		/**
+		 * Either a run of literal bytes or a reference to an existing block.
+		 */
+		private static class Op {
+
+			private final byte[] literal;
+			private final int block;
+
+			private Op(byte[] literal, int block) {
+				this.literal = literal;
+				this.block = block;
+			}
+		}
+	}
+
+	/**
+	 * The contents of a file read by {@link #readFiles}, or the error that
+	 * prevented it from being read.
+	 */
+	public static class ReadResult {
+
+		private final File file;
+		private final String contents;
+		private final Throwable error;
+
+		private ReadResult(File file, String contents, Throwable error) {
+			this.file = file;
+			this.contents = contents;
+			this.error = error;
+		}
+
+		/**
+		 * Gets the file that was read.
+		 * @return the {@link File}
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the contents of the file.
+		 * @return the whole file as string, or null if it could not be read
+		 */
+		public String getContents() {
+			return contents;
+		}
+
+		/**
+		 * Gets the error that prevented the file from being read.
+		 * @return the {@link IOException} (or other error, such as an
+		 *         {@link OutOfMemoryError}), or null if the file was read
+		 */
+		public Throwable getError() {
+			return error;
+		}
+
+		/**
+		 * Checks if the file was read successfully.
+		 * @return true if the file was read, false otherwise
+		 */
+		public boolean isSuccess() {
+			return error == null;
+		}
+	}
+
+	/**
+	 * A thread-safe pool of heap and direct {@link ByteBuffer}s grouped into
+	 * size classes, holding at most a fixed number of bytes of idle buffers.
+	 * Each borrowed buffer must be released exactly once and not used
+	 * afterwards, since a buffer released twice could be handed to two
+	 * borrowers at the same time.
+	 */
+	public static class BufferPool {
+
+		private static final int[] DEFAULT_SIZE_CLASSES =
+			{1 << 12, 1 << 13, 1 << 16, 1 << 20};
+		private static final long DEFAULT_MEMORY_BUDGET = 32L << 20;
+
+		private final int[] sizeClasses;
+		private final long memoryBudget;
+		private final ConcurrentLinkedDeque<ByteBuffer>[] heapBuffers;
+		private final ConcurrentLinkedDeque<ByteBuffer>[] directBuffers;
+		private final AtomicLong pooledBytes = new AtomicLong();
+		private final AtomicLong borrowed = new AtomicLong();
+		private final AtomicLong allocated = new AtomicLong();
+		private final AtomicLong returned = new AtomicLong();
+		private final AtomicLong dropped = new AtomicLong();
+
+		/**
+		 * Creates a pool with the given size classes and memory budget.
+		 * @param sizeClasses  the buffer capacities to pool, in bytes
+		 * @param memoryBudget the most bytes of idle buffers to hold
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public BufferPool(int[] sizeClasses, long memoryBudget) {
+			this.sizeClasses = sizeClasses.clone();
+			Arrays.sort(this.sizeClasses);
+			this.memoryBudget = memoryBudget;
+			heapBuffers = new ConcurrentLinkedDeque[sizeClasses.length];
+			directBuffers = new ConcurrentLinkedDeque[sizeClasses.length];
+			for (int i = 0; i < sizeClasses.length; i++) {
+				heapBuffers[i] = new ConcurrentLinkedDeque<ByteBuffer>();
+				directBuffers[i] = new ConcurrentLinkedDeque<ByteBuffer>();
+			}
+		}
+
+		/**
+		 * Creates a pool with 4 KB, 8 KB, 64 KB and 1 MB size classes and a
+		 * 32 MB memory budget.
+		 */
+		public BufferPool() {
+			this(DEFAULT_SIZE_CLASSES, DEFAULT_MEMORY_BUDGET);
+		}
+
+		/**
+		 * Borrows a cleared heap buffer with at least the given capacity.
+		 * @param  size the minimum capacity in bytes
+		 * @return      a heap {@link ByteBuffer}
+		 */
+		public ByteBuffer borrowHeap(int size) {
+			return borrow(size, false);
+		}
+
+		/**
+		 * Borrows a cleared direct buffer with at least the given capacity.
+		 * @param  size the minimum capacity in bytes
+		 * @return      a direct {@link ByteBuffer}
+		 */
+		public ByteBuffer borrowDirect(int size) {
+			return borrow(size, true);
+		}
+
+		/**
+		 * Borrows a buffer from the smallest size class that fits, allocating
+		 * one if none is idle or the size is larger than every size class.
+		 * @param  size   the minimum capacity in bytes
+		 * @param  direct true for a direct buffer, false for a heap buffer
+		 * @return        a cleared {@link ByteBuffer}
+		 */
+		private ByteBuffer borrow(int size, boolean direct) {
+			borrowed.incrementAndGet();
+			int sizeClass = sizeClassOf(size, false);
+			if (sizeClass != -1) {
+				ByteBuffer buffer = (direct ? directBuffers:heapBuffers)
+					[sizeClass].pollFirst();
+				if (buffer != null) {
+					pooledBytes.addAndGet(-buffer.capacity());
+					return buffer;
+				}
+				size = sizeClasses[sizeClass];
+			}
+			allocated.incrementAndGet();
+			return direct ? ByteBuffer.allocateDirect(size):
+				ByteBuffer.allocate(size);
+		}
+
+		/**
+		 * Returns a buffer to the pool, dropping it if it does not match a size
+		 * class or the pool is already holding its full memory budget. A
+		 * buffer must be released exactly once and not used afterwards.
+		 * @param buffer the buffer to return
+		 */
+		public void release(ByteBuffer buffer) {
+			int sizeClass = sizeClassOf(buffer.capacity(), true);
+			if (sizeClass == -1 || buffer.isReadOnly() ||
+				pooledBytes.addAndGet(buffer.capacity()) > memoryBudget) {
+				if (sizeClass != -1 && !buffer.isReadOnly())
+					pooledBytes.addAndGet(-buffer.capacity());
+				dropped.incrementAndGet();
+				return;
+			}
+			buffer.clear();
+			(buffer.isDirect() ? directBuffers:heapBuffers)[sizeClass]
+				.offerFirst(buffer);
+			returned.incrementAndGet();
+		}
+
+		/**
+		 * Finds the size class for a capacity.
+		 * @param  size  the capacity in bytes
+		 * @param  exact true to only match a size class equal to the capacity
+		 * @return       the index of the size class, or -1 if none
+		 */
+		private int sizeClassOf(int size, boolean exact) {
+			for (int i = 0; i < sizeClasses.length; i++)
+				if (sizeClasses[i] >= size)
+					return !exact || sizeClasses[i] == size ? i:-1;
+			return -1;
+		}
+
+		/**
+		 * Gets the number of buffers borrowed from the pool.
+		 * @return the number of borrowed buffers
+		 */
+		public long getBorrowed() {
+			return borrowed.get();
+		}
+
+		/**
+		 * Gets the number of borrowed buffers that had to be allocated.
+		 * @return the number of allocated buffers
+		 */
+		public long getAllocated() {
+			return allocated.get();
+		}
+
+		/**
+		 * Gets the number of buffers returned to the pool for reuse.
+		 * @return the number of returned buffers
+		 */
+		public long getReturned() {
+			return returned.get();
+		}
+
+		/**
+		 * Gets the number of released buffers dropped instead of pooled.
+		 * @return the number of dropped buffers
+		 */
+		public long getDropped() {
+			return dropped.get();
+		}
+
+		/**
+		 * Gets the number of bytes held by idle buffers in the pool.
+		 * @return the number of pooled bytes
+		 */
+		public long getPooledBytes() {
+			return pooledBytes.get();
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"%d borrowed (%d allocated), %d returned, %d dropped, %d bytes pooled",
+				getBorrowed(), getAllocated(), getReturned(), getDropped(),
+				getPooledBytes());
+		}
+	}
+
+	/**
+	 * The next line of a sorted run being merged by {@link #sortLines}.
+	 */
+	private static class RunReader {
+
+		private final BufferedReader reader;
+		private final int index;
+		private String line;
+
+		private RunReader(BufferedReader reader, int index) {
+			this.reader = reader;
+			this.index = index;
+		}
+
+		/**
+		 * Reads the next line of the run.
+		 * @return             true if there was another line, false otherwise
+		 * @throws IOException if reading fails
+		 */
+		private boolean advance() throws IOException {
+			line = reader.readLine();
+			return line != null;
+		}
+	}
+
+	/**
+	 * A line of a file found by {@link #grep}.
+	 */
+	public static class GrepMatch {
+
+		private final long lineNumber;
+		private final long lineOffset;
+		private final long offset;
+		private final String line;
+
+		private GrepMatch(long lineNumber, long lineOffset, long offset,
+			String line) {
+			this.lineNumber = lineNumber;
+			this.lineOffset = lineOffset;
+			this.offset = offset;
+			this.line = line;
+		}
+
+		/**
+		 * Gets the number of the matching line, starting from 1.
+		 * @return the line number
+		 */
+		public long getLineNumber() {
+			return lineNumber;
+		}
+
+		/**
+		 * Gets the byte offset of the start of the matching line.
+		 * @return the line's byte offset in the file
+		 */
+		public long getLineOffset() {
+			return lineOffset;
+		}
+
+		/**
+		 * Gets the byte offset of the first match in the line.
+		 * @return the match's byte offset in the file
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * Gets the matching line.
+		 * @return the decoded line, without its line terminator
+		 */
+		public String getLine() {
+			return line;
+		}
+
+		@Override
+		public String toString() {
+			return lineNumber + ":" + line;
+		}
+	}
+
+	/**
+	 * Searches a mapped range of a file for {@link #grep}.
+	 */
+	private interface RangeSearcher {
+
+		/**
+		 * Searches a range for matching lines.
+		 * @param  buffer  the mapped range, starting at the start of a line
+		 * @param  base    the byte offset of the range in the file
+		 * @param  matches the list to add matches to, numbered from 0 at the
+		 *                 start of the range
+		 * @return         the number of newlines in the range
+		 */
+		long search(ByteBuffer buffer, long base, List<GrepMatch> matches);
+	}
+
+	/**
+	 * Iterates over the lines of a file from last to first, created by
+	 * {@link #reverseLines}. Closes itself once all lines are read.
+	 */
+	public static class ReverseLineIterator implements Iterator<String>,
+		AutoCloseable {
+
+		private final FileChannel channel;
+		private final BufferPool pool;
+		private ByteBuffer block;
+		private long blockStart, end;
+		private int blockLength;
+		private boolean done;
+
+		private ReverseLineIterator(FileChannel channel) throws IOException {
+			this.channel = channel;
+			pool = bufferPool;
+			block = pool.borrowHeap(IO_BUFFER_SIZE);
+			try {
+				end = channel.size();
+				blockStart = end;
+				done = end == 0;
+				if (!done && byteAt(end - 1) == '\n')
+					end--;
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			if (done)
+				close();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !done;
+		}
+
+		/**
+		 * Reads the previous line of the file.
+		 * @return the line, without its line terminator
+		 * @throws UncheckedIOException if reading fails
+		 */
+		@Override
+		public String next() {
+			if (done)
+				throw new NoSuchElementException();
+			try {
+				long start = end;
+				while (start > 0 && byteAt(start - 1) != '\n')
+					start--;
+				long lineEnd = end;
+				if (lineEnd > start && byteAt(lineEnd - 1) == '\r')
+					lineEnd--;
+
+				byte[] bytes = new byte[(int)(lineEnd - start)];
+				if (start >= blockStart && lineEnd <= blockStart + blockLength)
+					System.arraycopy(block.array(), (int)(start - blockStart),
+						bytes, 0, bytes.length);
+				else readFully(channel, ByteBuffer.wrap(bytes), start);
+
+				end = start - 1;
+				if (start == 0)
+					close();
+				return new String(bytes);
+			} catch (IOException e) {
+				close();
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/**
+		 * Gets a byte of the file, reading the block that ends at it if it is
+		 * not already read.
+		 * @param  position    the position of the byte
+		 * @return             the byte
+		 * @throws IOException if reading fails
+		 */
+		private byte byteAt(long position) throws IOException {
+			if (position < blockStart || position >= blockStart + blockLength) {
+				blockStart = Math.max(0, position + 1 - IO_BUFFER_SIZE);
+				block.clear().limit((int)(position + 1 - blockStart));
+				blockLength = readFully(channel, block, blockStart);
+			}
+			return block.get((int)(position - blockStart));
+		}
+
+		/**
+		 * Closes the file, stopping the iteration.
+		 */
+		@Override
+		public void close() {
+			done = true;
+			if (block == null)
+				return;
+			try {
+				channel.close();
+			} catch (IOException e) {}
+			pool.release(block);
+			block = null;
+		}
+	}
+
+	/**
+	 * Writes contents to an open {@link FileChannel}.
+	 */
+	private interface ChannelWriter {
+
+		void writeTo(FileChannel channel) throws IOException;
+	}
 }
\ No newline at end of file
@@ -49,6 +49,19 @@ public class OFileTester {
 
 		System.out.println("Note: It would take much longer to save to string line by line\n");
 
+		/* Adaptive vs fixed buffer size test */
+		int[] bufferSizes = {1024, 0};
+		for (int bufferSize : bufferSizes) {
+			ofile.setBufferSize(bufferSize);
+			startTime = System.nanoTime();
+			System.out.printf("Counting lines and checksumming with %d byte buffers... ",
+				ofile.getBufferSize());
+			ofile.countLines();
+			ofile.getChecksum();
+			System.out.printf("done in %f seconds.\n", (System.nanoTime() - startTime) / 1E9);
+		}
+		System.out.println();
+
 		/* Delete file */
 		ofile.delete();
 	}